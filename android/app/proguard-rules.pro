@@ -7,6 +7,11 @@
     public void *(android.webkit.WebView, java.lang.String);
 }
 
+# Keep methods called from page scripts
+-keepclassmembers class * {
+    @android.webkit.JavascriptInterface <methods>;
+}
+
 # Keep OkHttp (for DNS over HTTPS)
 -dontwarn okhttp3.**
 -dontwarn okio.**
@@ -0,0 +1,568 @@
+package com.inulute.mediumunlocker;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.util.Log;
+import android.webkit.WebResourceResponse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Offline copies of article pages: the document plus its stylesheets and images, one directory
+ * per article named by the fingerprint of its identity key. Every file starts with a small
+ * header (URL, MIME type, encoding, fetch time, validators) followed by the raw body, so it
+ * can be handed to {@code shouldInterceptRequest} as-is.
+ *
+ * The archive is bounded by the user's size budget; whole articles are evicted least recently
+ * opened first, using the document file's modification time as the access stamp.
+ */
+class ArticleArchive {
+
+    private static final String TAG = "ArticleArchive";
+    private static final int MAGIC = 0x4D554152; // "MUAR"
+    private static final String DOC = "doc";
+    private static final String RES_PREFIX = "r-";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String RESOURCES_PENDING = "pending";
+
+    static final int DEFAULT_BUDGET_MB = 100;
+    static final int[] BUDGET_OPTIONS_MB = {0, 50, 100, 250, 500};
+
+    private static final int MAX_RESOURCES = 40;
+    private static final int MAX_RESOURCE_BYTES = 2 * 1024 * 1024;
+    private static final int MAX_DOCUMENT_BYTES = 4 * 1024 * 1024;
+    private static final long REVALIDATE_AFTER_MS = 6 * 60 * 60 * 1000;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+
+    private static final Pattern TAG_PATTERN = Pattern.compile("<(link|img)\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTR_PATTERN = Pattern.compile(
+            "\\b(href|src|rel)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s>]+))", Pattern.CASE_INSENSITIVE);
+
+    private static ArticleArchive instance;
+
+    /** Response metadata stored ahead of each body. */
+    private static final class Header {
+        String url = "";
+        String mime = "text/html";
+        String encoding = "UTF-8";
+        long fetchedAt;
+        String etag = "";
+        String lastModified = "";
+    }
+
+    private static final class Fetched {
+        int code;
+        Header header = new Header();
+        byte[] body;
+    }
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final File root;
+    private final ImageCache imageCache;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // article fingerprint -> bytes on disk, least recently opened first
+    private final LinkedHashMap<Long, Long> sizes = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+    private volatile boolean indexLoaded;
+    // Same keys as sizes, readable without the lock so the main thread never waits on a scan
+    private final Set<Long> archived = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    static synchronized ArticleArchive get(Context context) {
+        if (instance == null) instance = new ArticleArchive(context.getApplicationContext());
+        return instance;
+    }
+
+    private ArticleArchive(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences("MediumUnlockerPrefs", Context.MODE_PRIVATE);
+        this.root = new File(context.getFilesDir(), "archive");
+        this.imageCache = ImageCache.get(context);
+        executor.execute(this::loadIndex);
+    }
+
+    boolean isEnabled() {
+        return budgetBytes() > 0;
+    }
+
+    /** Answered from memory once the index has loaded, which starts with the archive. */
+    boolean contains(String originalUrl) {
+        if (!indexLoaded) return new File(dirFor(originalUrl), DOC).isFile();
+        return archived.contains(fingerprint(originalUrl));
+    }
+
+    static boolean isOnline(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = cm != null ? cm.getActiveNetworkInfo() : null;
+        return info != null && info.isConnected();
+    }
+
+    static boolean isMetered(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return cm == null || cm.isActiveNetworkMetered();
+    }
+
+    // ==================== Serving (WebView IO thread) ====================
+
+    /** The archived document for the article, or null. */
+    WebResourceResponse openDocument(String originalUrl) {
+        File doc = new File(dirFor(originalUrl), DOC);
+        WebResourceResponse response = open(doc);
+        if (response != null) {
+            long fp = fingerprint(originalUrl);
+            executor.execute(() -> touch(fp, doc));
+        }
+        return response;
+    }
+
+    /** An archived subresource of the article, or null to let the WebView fetch it. */
+    WebResourceResponse openResource(String originalUrl, String url) {
+        return open(new File(dirFor(originalUrl), resourceName(url)));
+    }
+
+    private static WebResourceResponse open(File file) {
+        if (!file.isFile()) return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+            Header header = readHeader(in);
+            return new WebResourceResponse(header.mime, header.encoding.isEmpty() ? null : header.encoding, in);
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable archive file " + file, e);
+            closeQuietly(in);
+            return null;
+        }
+    }
+
+    // ==================== Capture ====================
+
+    /** Stores a page the WebView just rendered, then fetches its stylesheets and images. */
+    void capture(String originalUrl, String pageUrl, String html) {
+        if (!isEnabled()) return;
+        executor.execute(() -> {
+            Header header = new Header();
+            header.url = pageUrl;
+            store(originalUrl, header, html);
+        });
+    }
+
+    /**
+     * Refreshes an archived article in the background if its copy is older than
+     * {@link #REVALIDATE_AFTER_MS}, using a conditional request when validators are known.
+     */
+    void revalidate(String originalUrl) {
+        executor.execute(() -> {
+            File dir = dirFor(originalUrl);
+            File doc = new File(dir, DOC);
+            Header old;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(doc), 1024))) {
+                old = readHeader(in);
+            } catch (IOException e) {
+                return;
+            }
+            if (!isOnline(context)) return;
+            boolean resourcesPending = new File(dir, RESOURCES_PENDING).exists() && !isMetered(context);
+            try {
+                if (System.currentTimeMillis() - old.fetchedAt < REVALIDATE_AFTER_MS) {
+                    if (resourcesPending) {
+                        storeResources(originalUrl, dir, new String(readBody(doc), StandardCharsets.UTF_8), old.url);
+                    }
+                    return;
+                }
+                Fetched fetched = fetch(old.url, old, MAX_DOCUMENT_BYTES);
+                if (fetched.code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    byte[] body = readBody(doc);
+                    old.fetchedAt = System.currentTimeMillis();
+                    writeFile(doc, old, body);
+                    if (resourcesPending) storeResources(originalUrl, dir, new String(body, StandardCharsets.UTF_8), old.url);
+                } else if (fetched.code == HttpURLConnection.HTTP_OK) {
+                    String html = decode(fetched);
+                    if (MirrorRacer.looksLikeArticle(html)) store(originalUrl, fetched.header, html);
+                }
+            } catch (IOException e) {
+                Log.d(TAG, "Revalidation failed for " + originalUrl + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Downloads and archives an article from {@code pageUrl}; blocks, so call it off the main
+     * thread. Returns false if the mirror did not serve an article page.
+     */
+    boolean download(String originalUrl, String pageUrl) throws IOException {
+        if (!isEnabled()) return false;
+        Fetched fetched = fetch(pageUrl, null, MAX_DOCUMENT_BYTES);
+        if (fetched.code != HttpURLConnection.HTTP_OK) return false;
+        String html = decode(fetched);
+        if (!MirrorRacer.looksLikeArticle(html)) return false;
+        store(originalUrl, fetched.header, html);
+        return true;
+    }
+
+    /** Drops everything; used when the archive is switched off. */
+    void clear() {
+        executor.execute(() -> {
+            File[] dirs = root.listFiles();
+            if (dirs != null) {
+                for (File dir : dirs) deleteDir(dir);
+            }
+            synchronized (this) {
+                sizes.clear();
+                archived.clear();
+                totalBytes = 0;
+            }
+        });
+    }
+
+    /** Evicts down to the current budget; call after the budget is lowered. */
+    void trim() {
+        executor.execute(() -> evict(-1));
+    }
+
+    private void store(String originalUrl, Header header, String html) {
+        File dir = dirFor(originalUrl);
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+        header.fetchedAt = System.currentTimeMillis();
+        header.mime = "text/html";
+        header.encoding = "UTF-8";
+        try {
+            writeFile(new File(dir, DOC), header, withBase(html, header.url).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not archive " + originalUrl, e);
+            return;
+        }
+        storeResources(originalUrl, dir, html, header.url);
+    }
+
+    /**
+     * Fetches the stylesheets and images the page references that are not archived yet. On a
+     * metered network they are left for later: the WebView has just downloaded them once, and
+     * a marker file has {@link #revalidate} fetch them the next time the article is opened on
+     * an unmetered one.
+     */
+    private void storeResources(String originalUrl, File dir, String html, String pageUrl) {
+        boolean defer = isMetered(context);
+        Set<String> keep = new HashSet<>();
+        keep.add(DOC);
+        if (defer) {
+            keep.add(RESOURCES_PENDING);
+            try {
+                new File(dir, RESOURCES_PENDING).createNewFile();
+            } catch (IOException ignored) { }
+        }
+        RequestBlocker blocker = RequestBlocker.isEnabled(context) ? RequestBlocker.get(context) : null;
+        for (String url : findResources(html, pageUrl)) {
+            if (blocker != null && blocker.shouldBlock(url)) continue;
+            String name = resourceName(url);
+            keep.add(name);
+            File file = new File(dir, name);
+            if (defer || file.isFile()) continue;
+            try {
+                Fetched res = fetch(url, null, MAX_RESOURCE_BYTES);
+                if (res.code != HttpURLConnection.HTTP_OK) continue;
+                writeFile(file, res.header, res.body);
+                if (res.header.mime.startsWith("image/")) imageCache.put(url, res.header.mime, res.body);
+            } catch (IOException e) {
+                Log.d(TAG, "Skipped resource " + url + ": " + e.getMessage());
+            }
+        }
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!keep.contains(f.getName())) f.delete();
+                else size += f.length();
+            }
+        }
+        long fp = fingerprint(originalUrl);
+        synchronized (this) {
+            loadIndex();
+            Long previous = sizes.put(fp, size);
+            archived.add(fp);
+            totalBytes += size - (previous != null ? previous : 0);
+        }
+        evict(fp);
+    }
+
+    // ==================== Index & eviction ====================
+
+    private synchronized void loadIndex() {
+        if (indexLoaded) return;
+        try {
+            scanIndex();
+        } finally {
+            indexLoaded = true;
+        }
+    }
+
+    private void scanIndex() {
+        File[] dirs = root.listFiles(File::isDirectory);
+        if (dirs == null) return;
+        long[] stamps = new long[dirs.length];
+        Integer[] order = new Integer[dirs.length];
+        for (int i = 0; i < dirs.length; i++) {
+            stamps[i] = new File(dirs[i], DOC).lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(stamps[a], stamps[b]));
+        for (int i : order) {
+            long size = 0;
+            File[] files = dirs[i].listFiles();
+            if (files != null) {
+                for (File f : files) size += f.length();
+            }
+            try {
+                long fp = Long.parseLong(dirs[i].getName(), Character.MAX_RADIX);
+                sizes.put(fp, size);
+                if (stamps[i] > 0) archived.add(fp);
+                totalBytes += size;
+            } catch (NumberFormatException e) {
+                deleteDir(dirs[i]);
+            }
+        }
+    }
+
+    private void touch(long fp, File doc) {
+        doc.setLastModified(System.currentTimeMillis());
+        synchronized (this) {
+            loadIndex();
+            sizes.get(fp);
+        }
+    }
+
+    /** Removes least recently opened articles until under budget, never {@code keep}. */
+    private void evict(long keep) {
+        long budget = budgetBytes();
+        while (true) {
+            long victim;
+            synchronized (this) {
+                loadIndex();
+                if (totalBytes <= budget || sizes.isEmpty()) return;
+                Iterator<Map.Entry<Long, Long>> it = sizes.entrySet().iterator();
+                Map.Entry<Long, Long> eldest = it.next();
+                if (eldest.getKey() == keep) {
+                    if (!it.hasNext()) return;
+                    eldest = it.next();
+                }
+                victim = eldest.getKey();
+                totalBytes -= eldest.getValue();
+                it.remove();
+                archived.remove(victim);
+            }
+            deleteDir(new File(root, Long.toString(victim, Character.MAX_RADIX)));
+        }
+    }
+
+    private long budgetBytes() {
+        return prefs.getInt(SettingsActivity.PREF_ARCHIVE_BUDGET_MB, DEFAULT_BUDGET_MB) * 1024L * 1024L;
+    }
+
+    // ==================== Files ====================
+
+    private File dirFor(String originalUrl) {
+        return new File(root, Long.toString(fingerprint(originalUrl), Character.MAX_RADIX));
+    }
+
+    private static long fingerprint(String originalUrl) {
+        return UrlCanonicalizer.keyFingerprint(originalUrl);
+    }
+
+    private static String resourceName(String url) {
+        return RES_PREFIX + Long.toString(UrlFingerprintSet.fingerprint(url), Character.MAX_RADIX);
+    }
+
+    private static void writeFile(File file, Header header, byte[] body) throws IOException {
+        File tmp = new File(file.getPath() + TMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 8192))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(header.url);
+            out.writeUTF(header.mime);
+            out.writeUTF(header.encoding);
+            out.writeLong(header.fetchedAt);
+            out.writeUTF(header.etag);
+            out.writeUTF(header.lastModified);
+            out.write(body);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Rename failed for " + file);
+        }
+    }
+
+    private static byte[] readBody(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            readHeader(in);
+            return readAll(in, MAX_DOCUMENT_BYTES);
+        }
+    }
+
+    private static Header readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not an archive file");
+        Header h = new Header();
+        h.url = in.readUTF();
+        h.mime = in.readUTF();
+        h.encoding = in.readUTF();
+        h.fetchedAt = in.readLong();
+        h.etag = in.readUTF();
+        h.lastModified = in.readUTF();
+        return h;
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) return;
+        try {
+            in.close();
+        } catch (IOException ignored) { }
+    }
+
+    // ==================== Network ====================
+
+    private static Fetched fetch(String url, Header validators, int maxBytes) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setInstanceFollowRedirects(true);
+            conn.setRequestProperty("User-Agent", WebViewActivity.USER_AGENT);
+            if (validators != null && !validators.etag.isEmpty()) {
+                conn.setRequestProperty("If-None-Match", validators.etag);
+            }
+            if (validators != null && !validators.lastModified.isEmpty()) {
+                conn.setRequestProperty("If-Modified-Since", validators.lastModified);
+            }
+            Fetched f = new Fetched();
+            f.code = conn.getResponseCode();
+            if (f.code != HttpURLConnection.HTTP_OK) {
+                NetworkWarmup.discard(conn);
+                return f;
+            }
+            if (conn.getContentLength() > maxBytes) throw new IOException("Too large");
+            f.header.url = conn.getURL().toString();
+            String type = conn.getContentType();
+            if (type != null) {
+                int semi = type.indexOf(';');
+                f.header.mime = (semi < 0 ? type : type.substring(0, semi)).trim().toLowerCase(Locale.ROOT);
+                int cs = type.toLowerCase(Locale.ROOT).indexOf("charset=");
+                f.header.encoding = cs < 0 ? "" : type.substring(cs + 8).replace("\"", "").trim();
+            } else {
+                f.header.encoding = "";
+            }
+            f.header.fetchedAt = System.currentTimeMillis();
+            String etag = conn.getHeaderField("ETag");
+            String lastModified = conn.getHeaderField("Last-Modified");
+            f.header.etag = etag != null ? etag : "";
+            f.header.lastModified = lastModified != null ? lastModified : "";
+            try (InputStream in = conn.getInputStream()) {
+                f.body = readAll(in, maxBytes);
+            }
+            return f;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static byte[] readAll(InputStream in, int maxBytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            if (out.size() + n > maxBytes) throw new IOException("Too large");
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static String decode(Fetched f) {
+        Charset charset = StandardCharsets.UTF_8;
+        try {
+            if (!f.header.encoding.isEmpty()) charset = Charset.forName(f.header.encoding);
+        } catch (RuntimeException ignored) { }
+        return new String(f.body, charset);
+    }
+
+    // ==================== HTML ====================
+
+    /** Stylesheet and image URLs referenced by the page, resolved against {@code pageUrl}. */
+    static Set<String> findResources(String html, String pageUrl) {
+        Set<String> urls = new HashSet<>();
+        URL base;
+        try {
+            base = new URL(pageUrl);
+        } catch (IOException e) {
+            return urls;
+        }
+        Matcher tag = TAG_PATTERN.matcher(html);
+        while (tag.find() && urls.size() < MAX_RESOURCES) {
+            boolean isLink = tag.group(1).equalsIgnoreCase("link");
+            String href = null;
+            String src = null;
+            String rel = "";
+            Matcher attr = ATTR_PATTERN.matcher(tag.group());
+            while (attr.find()) {
+                String value = attr.group(2) != null ? attr.group(2)
+                        : attr.group(3) != null ? attr.group(3) : attr.group(4);
+                switch (attr.group(1).toLowerCase(Locale.ROOT)) {
+                    case "href": href = value; break;
+                    case "src": src = value; break;
+                    default: rel = value.toLowerCase(Locale.ROOT);
+                }
+            }
+            String target = isLink ? (rel.contains("stylesheet") ? href : null) : src;
+            if (target == null || target.isEmpty() || target.startsWith("data:")) continue;
+            try {
+                URL resolved = new URL(base, target.replace("&amp;", "&"));
+                String protocol = resolved.getProtocol();
+                if (protocol.equals("http") || protocol.equals("https")) urls.add(resolved.toString());
+            } catch (IOException ignored) { }
+        }
+        return urls;
+    }
+
+    // Pins relative URLs to the page they came from, whichever mirror URL later serves the copy
+    private static String withBase(String html, String pageUrl) {
+        String lower = html.length() > 4096 ? html.substring(0, 4096).toLowerCase(Locale.ROOT) : html.toLowerCase(Locale.ROOT);
+        if (lower.contains("<base")) return html;
+        int head = lower.indexOf("<head");
+        int insertAt = head < 0 ? -1 : lower.indexOf('>', head) + 1;
+        if (insertAt <= 0) return html;
+        String base = "<base href=\"" + pageUrl.replace("\"", "&quot;") + "\">";
+        return html.substring(0, insertAt) + base + html.substring(insertAt);
+    }
+}
@@ -0,0 +1,230 @@
+package com.inulute.mediumunlocker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip-compressed binary backup of history and bookmarks, the compact alternative to the
+ * JSON export. Timestamps are zigzag varint deltas, and a freediumUrl that is just a mirror
+ * prefix plus originalUrl is stored as a reference into a prefix table built while writing.
+ * A delta backup holds only the entries newer than its {@code since} watermark and is always
+ * merged on import.
+ *
+ * Layout inside the gzip stream: magic, version, flags, exportedAt, since, then per list a
+ * list id, a varint count and the items, terminated by {@link #END}. Strings are a varint
+ * byte length and UTF-8; version 1 used {@code writeUTF}, which cannot hold more than 64 KB.
+ */
+class CompactBackup {
+
+    private static final int MAGIC = 0x4D55424B; // "MUBK"
+    private static final int VERSION = 2;
+    private static final int MAX_STRING_BYTES = 16 * 1024 * 1024;
+    private static final int FLAG_DELTA = 1;
+    private static final int END = 0xFF;
+
+    // freediumUrl encodings; codes from PREFIX_BASE up refer to an earlier prefix
+    private static final int FREEDIUM_LITERAL = 0;
+    private static final int FREEDIUM_NEW_PREFIX = 1;
+    private static final int PREFIX_BASE = 2;
+
+    private static final int PROGRESS_STEP = 200;
+
+    /** A backup whose header has been read; the items follow. */
+    static final class Reader {
+        final boolean delta;
+        final long exportedAt;
+        private final DataInputStream data;
+        private final int version;
+
+        Reader(DataInputStream data, int version, boolean delta, long exportedAt) {
+            this.data = data;
+            this.version = version;
+            this.delta = delta;
+            this.exportedAt = exportedAt;
+        }
+
+        /** Streams the items to {@code sink} as they are decoded, list by list, newest first. */
+        void readItems(HistoryManager.ItemSink sink, HistoryManager.Progress progress) throws IOException {
+            List<String> prefixes = new ArrayList<>();
+            int[] done = {0};
+            int list;
+            while ((list = data.readUnsignedByte()) != END) {
+                readList(data, version, list, sink, prefixes, done, progress);
+            }
+        }
+    }
+
+    private CompactBackup() { }
+
+    /** True if {@code in} starts with a gzip header; the stream must support mark/reset. */
+    static boolean detect(BufferedInputStream in) throws IOException {
+        in.mark(2);
+        int b0 = in.read();
+        int b1 = in.read();
+        in.reset();
+        return b0 == 0x1f && b1 == 0x8b;
+    }
+
+    /** Writes the items (newest first) with a timestamp after {@code since}; 0 exports everything. */
+    static void write(OutputStream out, List<HistoryManager.HistoryItem> history,
+                      List<HistoryManager.HistoryItem> bookmarks, long since, long exportedAt,
+                      HistoryManager.Progress progress) throws IOException {
+        history = newerThan(history, since);
+        bookmarks = newerThan(bookmarks, since);
+        int total = history.size() + bookmarks.size();
+        GZIPOutputStream gzip = new GZIPOutputStream(out, 8192);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip, 8192));
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeByte(since > 0 ? FLAG_DELTA : 0);
+        data.writeLong(exportedAt);
+        data.writeLong(since);
+        HashMap<String, Integer> prefixes = new HashMap<>();
+        int done = writeList(data, HistoryStore.LIST_HISTORY, history, prefixes, 0, total, progress);
+        writeList(data, HistoryStore.LIST_BOOKMARKS, bookmarks, prefixes, done, total, progress);
+        data.writeByte(END);
+        data.flush();
+        gzip.finish();
+    }
+
+    /** Reads the header; the items are then read with {@link Reader#readItems}. */
+    static Reader open(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 8192), 8192));
+        if (data.readInt() != MAGIC) throw new IOException("Not a backup");
+        int version = data.readUnsignedByte();
+        if (version > VERSION) throw new IOException("Unsupported backup version");
+        int flags = data.readUnsignedByte();
+        Reader reader = new Reader(data, version, (flags & FLAG_DELTA) != 0, data.readLong());
+        data.readLong(); // since
+        return reader;
+    }
+
+    private static List<HistoryManager.HistoryItem> newerThan(List<HistoryManager.HistoryItem> items, long since) {
+        if (since <= 0) return items;
+        List<HistoryManager.HistoryItem> newer = new ArrayList<>();
+        for (HistoryManager.HistoryItem item : items) {
+            if (item.timestamp > since) newer.add(item);
+        }
+        return newer;
+    }
+
+    private static int writeList(DataOutputStream data, int list, List<HistoryManager.HistoryItem> items,
+                                 HashMap<String, Integer> prefixes, int done, int total,
+                                 HistoryManager.Progress progress) throws IOException {
+        data.writeByte(list);
+        writeVarint(data, items.size());
+        long previous = 0;
+        for (HistoryManager.HistoryItem item : items) {
+            checkInterrupted();
+            writeVarint(data, zigzag(item.timestamp - previous));
+            previous = item.timestamp;
+            writeString(data, item.title);
+            writeString(data, item.originalUrl);
+            String freedium = item.freediumUrl;
+            if (!item.originalUrl.isEmpty() && freedium.endsWith(item.originalUrl)) {
+                String prefix = freedium.substring(0, freedium.length() - item.originalUrl.length());
+                Integer id = prefixes.get(prefix);
+                if (id != null) {
+                    writeVarint(data, PREFIX_BASE + id);
+                } else {
+                    prefixes.put(prefix, prefixes.size());
+                    writeVarint(data, FREEDIUM_NEW_PREFIX);
+                    writeString(data, prefix);
+                }
+            } else {
+                writeVarint(data, FREEDIUM_LITERAL);
+                writeString(data, freedium);
+            }
+            if (++done % PROGRESS_STEP == 0 && progress != null) progress.onProgress(done, total);
+        }
+        if (progress != null) progress.onProgress(done, total);
+        return done;
+    }
+
+    private static void readList(DataInputStream data, int version, int list, HistoryManager.ItemSink sink,
+                                 List<String> prefixes, int[] done, HistoryManager.Progress progress)
+            throws IOException {
+        boolean known = list == HistoryStore.LIST_HISTORY || list == HistoryStore.LIST_BOOKMARKS;
+        int count = (int) readVarint(data);
+        long timestamp = 0;
+        for (int i = 0; i < count; i++) {
+            checkInterrupted();
+            timestamp += unzigzag(readVarint(data));
+            String title = readString(data, version);
+            String originalUrl = readString(data, version);
+            int code = (int) readVarint(data);
+            String freedium;
+            if (code == FREEDIUM_LITERAL) {
+                freedium = readString(data, version);
+            } else if (code == FREEDIUM_NEW_PREFIX) {
+                String prefix = readString(data, version);
+                prefixes.add(prefix);
+                freedium = prefix + originalUrl;
+            } else {
+                int id = code - PREFIX_BASE;
+                if (id >= prefixes.size()) throw new IOException("Bad prefix reference");
+                freedium = prefixes.get(id) + originalUrl;
+            }
+            if (known) sink.add(list, new HistoryManager.HistoryItem(title, originalUrl, freedium, timestamp));
+            if (++done[0] % PROGRESS_STEP == 0 && progress != null) progress.onProgress(done[0], -1);
+        }
+        if (known) sink.endList(list);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarint(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, int version) throws IOException {
+        if (version < 2) return in.readUTF();
+        long length = readVarint(in);
+        if (length > MAX_STRING_BYTES) throw new IOException("String too long");
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Cancelled");
+    }
+}
@@ -0,0 +1,162 @@
+package com.inulute.mediumunlocker;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.google.android.material.appbar.MaterialToolbar;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Article open times from {@link LoadTimings}: p50/p95 per mirror, recent loads, CSV export. */
+public class DiagnosticsActivity extends AppCompatActivity {
+
+    private static final int RECENT_ROWS = 20;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ActivityResultLauncher<String> exportLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("text/csv"),
+            uri -> { if (uri != null) exportToUri(uri); }
+    );
+
+    private LoadTimings loadTimings;
+    private TextView mirrorSummary;
+    private TextView recentLoads;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+
+        loadTimings = LoadTimings.get(this);
+        mirrorSummary = findViewById(R.id.mirrorSummary);
+        recentLoads = findViewById(R.id.recentLoads);
+
+        MaterialToolbar toolbar = findViewById(R.id.diagnosticsToolbar);
+        toolbar.setNavigationOnClickListener(v -> finish());
+        toolbar.setOnMenuItemClickListener(item -> {
+            int id = item.getItemId();
+            if (id == R.id.action_export_csv) {
+                exportLauncher.launch("medium_unlocker_timings.csv");
+                return true;
+            } else if (id == R.id.action_clear_timings) {
+                new AlertDialog.Builder(this)
+                        .setTitle("Clear timings?")
+                        .setMessage("All recorded load times will be removed.")
+                        .setPositiveButton("Clear", (dialog, which) -> {
+                            loadTimings.clear();
+                            render();
+                        })
+                        .setNegativeButton("Cancel", null)
+                        .show();
+                return true;
+            }
+            return false;
+        });
+
+        render();
+    }
+
+    @Override
+    protected void onDestroy() {
+        executor.shutdown();
+        super.onDestroy();
+    }
+
+    private void render() {
+        LoadTimings.Snapshot s = loadTimings.snapshot();
+        if (s.count == 0) {
+            mirrorSummary.setText("No article loads recorded yet.");
+            recentLoads.setText("—");
+            return;
+        }
+
+        StringBuilder summary = new StringBuilder();
+        int[] total = new int[s.count];
+        int[] toActivity = new int[s.count];
+        int[] toFirstByte = new int[s.count];
+        int[] toFinish = new int[s.count];
+        for (int m = 0; m < SettingsActivity.MIRROR_LABELS.length; m++) {
+            int n = 0;
+            int failedOver = 0;
+            for (int i = 0; i < s.count; i++) {
+                if (s.mirror[i] != m) continue;
+                total[n] = s.total(i);
+                toActivity[n] = s.intentToActivity[i];
+                toFirstByte[n] = s.activityToFirstByte[i];
+                toFinish[n] = s.firstByteToFinish[i];
+                if (s.failovers[i] > 0) failedOver++;
+                n++;
+            }
+            if (n == 0) continue;
+            if (summary.length() > 0) summary.append('\n');
+            summary.append(SettingsActivity.MIRROR_LABELS[m])
+                    .append(String.format(Locale.US, "  (%d loads, %d after failover)\n", n, failedOver))
+                    .append(String.format(Locale.US, "%-11s%8s%8s\n", "", "p50", "p95"))
+                    .append(row("total", total, n))
+                    .append(row("to screen", toActivity, n))
+                    .append(row("1st byte", toFirstByte, n))
+                    .append(row("finish", toFinish, n));
+        }
+        mirrorSummary.setText(summary.toString().trim());
+
+        SimpleDateFormat time = new SimpleDateFormat("MMM d HH:mm", Locale.getDefault());
+        StringBuilder recent = new StringBuilder();
+        for (int i = s.count - 1; i >= Math.max(0, s.count - RECENT_ROWS); i--) {
+            int ms = s.total(i);
+            recent.append(time.format(new Date(s.finishedAt[i])))
+                    .append("  ").append(SettingsActivity.MIRROR_LABELS[s.mirror[i]])
+                    .append("  ").append(ms < 0 ? "?" : ms + " ms")
+                    .append("  ").append(LoadTimings.SOURCE_LABELS[s.source[i]]);
+            if (s.failovers[i] > 0) recent.append(", ").append(s.failovers[i]).append(" failover");
+            recent.append('\n');
+        }
+        recentLoads.setText(recent.toString().trim());
+    }
+
+    private static String row(String label, int[] values, int n) {
+        return String.format(Locale.US, "%-11s%8s%8s\n", label,
+                ms(LoadTimings.percentile(values, n, 50)), ms(LoadTimings.percentile(values, n, 95)));
+    }
+
+    private static String ms(int value) {
+        return value < 0 ? "–" : value + "ms";
+    }
+
+    private void exportToUri(Uri uri) {
+        LoadTimings.Snapshot s = loadTimings.snapshot();
+        executor.execute(() -> {
+            boolean ok;
+            try (OutputStream os = getContentResolver().openOutputStream(uri, "wt")) {
+                if (os == null) throw new IOException("No output stream for " + uri);
+                Writer out = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+                LoadTimings.writeCsv(s, out);
+                out.flush();
+                ok = true;
+            } catch (IOException e) {
+                ok = false;
+            }
+            boolean result = ok;
+            runOnUiThread(() -> {
+                if (isDestroyed()) return;
+                Toast.makeText(this, result ? "Export complete" : "Export failed", Toast.LENGTH_SHORT).show();
+            });
+        });
+    }
+}
@@ -8,6 +8,9 @@ import android.graphics.Paint;
 import android.graphics.RectF;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
@@ -21,7 +24,6 @@ import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
-import androidx.core.content.FileProvider;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
@@ -33,15 +35,12 @@ import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.tabs.TabLayout;
 import com.google.android.material.textfield.TextInputEditText;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.InputStreamReader;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Future;
 
 public class HistoryActivity extends AppCompatActivity {
 
@@ -51,10 +50,27 @@ public class HistoryActivity extends AppCompatActivity {
     private HistoryAdapter adapter;
     private boolean showingHistory = true;
 
+    private static final int SEARCH_PAGE_SIZE = 50;
+    private static final long SEARCH_DEBOUNCE_MS = 150;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable historyChanged = this::refreshList;
+
     private final ActivityResultLauncher<String[]> importLauncher = registerForActivityResult(
             new ActivityResultContracts.OpenDocument(),
-            uri -> { if (uri != null) importFromUri(uri); }
+            uri -> { if (uri != null) chooseImportMode(uri); }
+    );
+    private final ActivityResultLauncher<String> exportLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("application/json"),
+            uri -> { if (uri != null) exportToUri(uri, HistoryManager.FORMAT_JSON); }
     );
+    private int pendingBackupFormat = HistoryManager.FORMAT_BACKUP;
+    private final ActivityResultLauncher<String> backupLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("application/gzip"),
+            uri -> { if (uri != null) exportToUri(uri, pendingBackupFormat); }
+    );
+
+    private Future<?> transferTask;
+    private AlertDialog transferDialog;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -83,7 +99,16 @@ public class HistoryActivity extends AppCompatActivity {
             });
         }
 
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - 10) {
+                    adapter.loadMoreResults();
+                }
+            }
+        });
 
         adapter = new HistoryAdapter();
         recyclerView.setAdapter(adapter);
@@ -107,6 +132,28 @@ public class HistoryActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
         refreshList();
+        historyManager.addChangeListener(historyChanged);
+    }
+
+    @Override
+    protected void onPause() {
+        historyManager.removeChangeListener(historyChanged);
+        super.onPause();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        historyManager.flush();
+    }
+
+    @Override
+    protected void onDestroy() {
+        mainHandler.removeCallbacksAndMessages(null);
+        if (adapter != null) adapter.cancelSearch();
+        if (transferTask != null) transferTask.cancel(true);
+        if (transferDialog != null) transferDialog.dismiss();
+        super.onDestroy();
     }
 
     private List<HistoryManager.HistoryItem> getCurrentList() {
@@ -131,10 +178,11 @@ public class HistoryActivity extends AppCompatActivity {
     private void openItem(HistoryManager.HistoryItem item) {
         SharedPreferences prefs = getSharedPreferences("MediumUnlockerPrefs", MODE_PRIVATE);
         String mirror = prefs.getString(SettingsActivity.PREF_MIRROR, SettingsActivity.DEFAULT_MIRROR);
-        String url = SettingsActivity.getMirrorBaseUrl(mirror) + item.originalUrl;
+        String url = MirrorAffinity.get(this).articleUrl(this, item.originalUrl, mirror);
         Intent intent = new Intent(this, WebViewActivity.class);
         intent.putExtra("url", url);
         intent.putExtra("originalUrl", item.originalUrl);
+        intent.putExtra(LoadTimings.EXTRA_OPENED_AT, SystemClock.elapsedRealtime());
         startActivity(intent);
     }
 
@@ -154,13 +202,10 @@ public class HistoryActivity extends AppCompatActivity {
                         switch (which) {
                             case 0: openItem(item); break;
                             case 1:
-                                if (isBookmarked) {
-                                    historyManager.removeBookmark(item.originalUrl);
-                                    Toast.makeText(this, "Bookmark removed", Toast.LENGTH_SHORT).show();
-                                } else {
-                                    historyManager.addBookmark(item.title, item.originalUrl, item.freediumUrl);
-                                    Toast.makeText(this, "Bookmarked!", Toast.LENGTH_SHORT).show();
-                                }
+                                boolean bookmarked = historyManager.toggleBookmark(
+                                        item.title, item.originalUrl, item.freediumUrl);
+                                Toast.makeText(this, bookmarked ? "Bookmarked!" : "Bookmark removed",
+                                        Toast.LENGTH_SHORT).show();
                                 refreshList();
                                 break;
                             case 2:
@@ -184,7 +229,7 @@ public class HistoryActivity extends AppCompatActivity {
 
     private boolean onMenuItemSelected(MenuItem item) {
         int id = item.getItemId();
-        if (id == R.id.action_export) { exportData(); return true; }
+        if (id == R.id.action_export) { showExportDialog(); return true; }
         else if (id == R.id.action_import) {
             importLauncher.launch(new String[]{"application/json", "text/plain", "*/*"});
             return true;
@@ -192,42 +237,95 @@ public class HistoryActivity extends AppCompatActivity {
         return false;
     }
 
-    private void exportData() {
-        String json = historyManager.exportToJson();
-        if (json == null) { Toast.makeText(this, "Export failed", Toast.LENGTH_SHORT).show(); return; }
-        try {
-            File file = new File(getCacheDir(), "medium_unlocker_history.json");
-            FileWriter writer = new FileWriter(file);
-            writer.write(json);
-            writer.close();
-            Uri uri = FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", file);
-            Intent intent = new Intent(Intent.ACTION_SEND);
-            intent.setType("application/json");
-            intent.putExtra(Intent.EXTRA_STREAM, uri);
-            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-            startActivity(Intent.createChooser(intent, "Export History & Bookmarks"));
-        } catch (Exception e) {
-            Toast.makeText(this, "Export failed: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        }
+    private void showExportDialog() {
+        boolean canDelta = historyManager.hasBackupWatermark();
+        String[] options = canDelta
+                ? new String[]{"JSON", "Compact backup", "Changes since last backup"}
+                : new String[]{"JSON", "Compact backup"};
+        new AlertDialog.Builder(this)
+                .setTitle("Export")
+                .setItems(options, (dialog, which) -> {
+                    if (which == 0) {
+                        exportLauncher.launch("medium_unlocker_history.json");
+                    } else {
+                        pendingBackupFormat = which == 2
+                                ? HistoryManager.FORMAT_BACKUP_DELTA : HistoryManager.FORMAT_BACKUP;
+                        backupLauncher.launch(which == 2
+                                ? "medium_unlocker_changes.mub" : "medium_unlocker_backup.mub");
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
     }
 
-    private void importFromUri(Uri uri) {
-        try {
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(getContentResolver().openInputStream(uri)));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) sb.append(line).append("\n");
-            reader.close();
-            if (historyManager.importFromJson(sb.toString())) {
-                Toast.makeText(this, "Import successful!", Toast.LENGTH_SHORT).show();
-                refreshList();
-            } else {
-                Toast.makeText(this, "Invalid file format", Toast.LENGTH_SHORT).show();
-            }
-        } catch (Exception e) {
-            Toast.makeText(this, "Import failed: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        }
+    private void exportToUri(Uri uri, int format) {
+        runTransfer("Exporting", historyManager.exportAsync(
+                () -> getContentResolver().openOutputStream(uri, "wt"),
+                format,
+                this::onTransferProgress,
+                ok -> {
+                    if (isDestroyed()) return;
+                    dismissTransfer();
+                    Toast.makeText(this, Boolean.TRUE.equals(ok) ? "Export complete" : "Export failed",
+                            Toast.LENGTH_SHORT).show();
+                }));
+    }
+
+    private void chooseImportMode(Uri uri) {
+        new AlertDialog.Builder(this)
+                .setTitle("Import")
+                .setItems(new String[]{"Merge with current data", "Replace current data"},
+                        (dialog, which) -> importFromUri(uri, which == 0))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void importFromUri(Uri uri, boolean merge) {
+        runTransfer("Importing", historyManager.importAsync(
+                () -> getContentResolver().openInputStream(uri),
+                merge,
+                this::onTransferProgress,
+                ok -> {
+                    if (isDestroyed()) return;
+                    dismissTransfer();
+                    if (ok == null) {
+                        Toast.makeText(this, "Import failed", Toast.LENGTH_SHORT).show();
+                    } else if (ok) {
+                        Toast.makeText(this, "Import successful!", Toast.LENGTH_SHORT).show();
+                        refreshList();
+                    } else {
+                        Toast.makeText(this, "Invalid file format", Toast.LENGTH_SHORT).show();
+                    }
+                }));
+    }
+
+    // ==================== Import/Export Progress ====================
+
+    private void runTransfer(String title, Future<?> task) {
+        transferTask = task;
+        transferDialog = new AlertDialog.Builder(this)
+                .setTitle(title)
+                .setMessage("Starting…")
+                .setCancelable(false)
+                .setNegativeButton("Cancel", (dialog, which) -> {
+                    task.cancel(true);
+                    transferDialog = null;
+                    Toast.makeText(this, title + " cancelled", Toast.LENGTH_SHORT).show();
+                })
+                .show();
+    }
+
+    private void onTransferProgress(int done, int total) {
+        if (transferDialog == null) return;
+        transferDialog.setMessage(total > 0
+                ? done + " of " + total + " items"
+                : done + " items");
+    }
+
+    private void dismissTransfer() {
+        if (transferDialog != null) transferDialog.dismiss();
+        transferDialog = null;
+        transferTask = null;
     }
 
     private void showClearDialog() {
@@ -275,20 +373,60 @@ public class HistoryActivity extends AppCompatActivity {
             applyFilter(query);
         }
 
+        private int searchGeneration = 0;
+        private boolean searchInFlight = false;
+        private boolean moreResults = false;
+        private Future<?> pendingSearch;
+
         private void applyFilter(String query) {
+            searchGeneration++;
+            mainHandler.removeCallbacksAndMessages(null);
             if (query == null || query.trim().isEmpty()) {
+                searchInFlight = false;
+                moreResults = false;
                 displayList = new ArrayList<>(fullList);
-            } else {
-                String lower = query.toLowerCase(Locale.getDefault());
-                displayList = new ArrayList<>();
-                for (HistoryManager.HistoryItem item : fullList) {
-                    if (item.title.toLowerCase(Locale.getDefault()).contains(lower)
-                            || item.originalUrl.toLowerCase(Locale.getDefault()).contains(lower)) {
-                        displayList.add(item);
-                    }
-                }
+                notifyDataSetChanged();
+                updateEmptyState();
+                return;
             }
-            notifyDataSetChanged();
+            final int generation = searchGeneration;
+            final String trimmed = query.trim();
+            mainHandler.postDelayed(() -> runSearch(generation, trimmed, 0), SEARCH_DEBOUNCE_MS);
+        }
+
+        void loadMoreResults() {
+            if (searchInFlight || !moreResults || currentFilter.trim().isEmpty()) return;
+            runSearch(searchGeneration, currentFilter.trim(), displayList.size());
+        }
+
+        private void runSearch(int generation, String query, int offset) {
+            searchInFlight = true;
+            final boolean inBookmarks = !showingHistory;
+            if (offset == 0) cancelSearch();
+            pendingSearch = historyManager.searchAsync(inBookmarks, query, offset, SEARCH_PAGE_SIZE, page -> {
+                if (generation != searchGeneration || isDestroyed()) return;
+                // A failed search leaves the page null; it must not keep load-more disabled
+                searchInFlight = false;
+                if (page == null) return;
+                moreResults = page.size() == SEARCH_PAGE_SIZE;
+                if (offset == 0) {
+                    displayList = new ArrayList<>(page);
+                    notifyDataSetChanged();
+                } else {
+                    int start = displayList.size();
+                    displayList.addAll(page);
+                    notifyItemRangeInserted(start, page.size());
+                }
+                updateEmptyState();
+            });
+        }
+
+        void cancelSearch() {
+            if (pendingSearch != null) pendingSearch.cancel(true);
+            pendingSearch = null;
+        }
+
+        private void updateEmptyState() {
             emptyView.setVisibility(displayList.isEmpty() ? View.VISIBLE : View.GONE);
             recyclerView.setVisibility(displayList.isEmpty() ? View.GONE : View.VISIBLE);
             if (displayList.isEmpty() && !currentFilter.isEmpty()) {
@@ -0,0 +1,309 @@
+package com.inulute.mediumunlocker;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.BufferedInputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record log backing {@link HistoryManager}. Every change is one small framed
+ * record ({@code length, payload, crc32}); the live state is rebuilt by replaying the log and
+ * the file is periodically rewritten to just the live entries (temp file + rename).
+ */
+class HistoryLog implements HistoryStore {
+
+    private static final String TAG = "HistoryLog";
+    private static final int MAGIC = 0x4D554C47; // "MULG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 512 * 1024;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+
+    private final File file;
+    private final File tmpFile;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private final CRC32 crc = new CRC32();
+    private FileOutputStream out;
+    private int recordCount;
+
+    HistoryLog(File dir) {
+        file = new File(dir, "history.log");
+        tmpFile = new File(dir, "history.log.tmp");
+    }
+
+    @Override
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /** Replays every intact record into {@code replay}, truncating a torn tail left by a crash. */
+    @Override
+    public synchronized void open(Replay replay) {
+        if (tmpFile.exists()) tmpFile.delete();
+        long validLength = HEADER_SIZE;
+        recordCount = 0;
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Bad header");
+                byte[] payload = new byte[256];
+                while (true) {
+                    int length;
+                    try { length = in.readInt(); } catch (EOFException e) { break; }
+                    if (length <= 0 || length > MAX_RECORD_SIZE) break;
+                    if (payload.length < length) payload = new byte[length];
+                    in.readFully(payload, 0, length);
+                    int storedCrc = in.readInt();
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != storedCrc) break;
+                    apply(payload, length, replay);
+                    validLength += 8 + length;
+                    recordCount++;
+                }
+            } catch (EOFException e) {
+                // Torn final record; everything before validLength is intact.
+            } catch (IOException e) {
+                Log.e(TAG, "Unreadable history log, starting fresh", e);
+                file.delete();
+                validLength = HEADER_SIZE;
+                recordCount = 0;
+            }
+        }
+        try {
+            if (!file.exists()) {
+                writeHeader(file);
+            } else if (file.length() > validLength) {
+                Log.w(TAG, "Truncating torn history log tail at " + validLength);
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(validLength);
+                }
+            }
+            out = new FileOutputStream(file, true);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open history log", e);
+        }
+    }
+
+    @Override
+    public synchronized void put(int list, HistoryManager.HistoryItem item) {
+        try {
+            beginRecord(OP_PUT, list);
+            recordOut.writeLong(item.timestamp);
+            recordOut.writeUTF(item.title);
+            recordOut.writeUTF(item.originalUrl);
+            recordOut.writeUTF(item.freediumUrl);
+            commitRecord();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append history record", e);
+        }
+    }
+
+    @Override
+    public synchronized void remove(int list, String originalUrl) {
+        try {
+            beginRecord(OP_REMOVE, list);
+            recordOut.writeUTF(originalUrl);
+            commitRecord();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append history record", e);
+        }
+    }
+
+    @Override
+    public synchronized void clear(int list) {
+        try {
+            beginRecord(OP_CLEAR, list);
+            commitRecord();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append history record", e);
+        }
+    }
+
+    @Override
+    public void batch(Runnable writes) {
+        writes.run();
+    }
+
+    /** True once dead records clearly outnumber the live ones. */
+    @Override
+    public synchronized boolean needsCompaction(int liveCount) {
+        return recordCount > 64 && recordCount > liveCount * 2;
+    }
+
+    @Override
+    public synchronized long checkpoint() {
+        return file.length();
+    }
+
+    /**
+     * Rewrites the log to {@code history} and {@code bookmarks} (each oldest first), which must
+     * reflect exactly the records up to {@code checkpoint}. Records appended after that
+     * point are carried over before the rename.
+     */
+    @Override
+    public void compact(List<HistoryManager.HistoryItem> history, List<HistoryManager.HistoryItem> bookmarks,
+                        long checkpoint) {
+        try {
+            writeHeader(tmpFile);
+            try (FileOutputStream tmpOut = new FileOutputStream(tmpFile, true)) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+                DataOutputStream data = new DataOutputStream(buffer);
+                CRC32 tmpCrc = new CRC32();
+                for (HistoryManager.HistoryItem item : history) {
+                    writePut(tmpOut, buffer, data, tmpCrc, LIST_HISTORY, item);
+                }
+                for (HistoryManager.HistoryItem item : bookmarks) {
+                    writePut(tmpOut, buffer, data, tmpCrc, LIST_BOOKMARKS, item);
+                }
+                synchronized (this) {
+                    int carried = copyTail(checkpoint, tmpOut);
+                    tmpOut.getFD().sync();
+                    if (out != null) {
+                        out.close();
+                        out = null;
+                    }
+                    if (!tmpFile.renameTo(file)) throw new IOException("Rename failed");
+                    out = new FileOutputStream(file, true);
+                    recordCount = history.size() + bookmarks.size() + carried;
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "History log compaction failed", e);
+            tmpFile.delete();
+            synchronized (this) {
+                try {
+                    if (out == null) out = new FileOutputStream(file, true);
+                } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    @Override
+    public List<HistoryManager.HistoryItem> search(int list, String query, int offset, int limit) {
+        return null;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (out != null) out.close();
+        } catch (IOException ignored) { }
+        out = null;
+    }
+
+    @Override
+    public synchronized void delete() {
+        close();
+        file.delete();
+        tmpFile.delete();
+    }
+
+    private void beginRecord(byte op, int list) throws IOException {
+        recordBuffer.reset();
+        recordOut.writeByte(op);
+        recordOut.writeByte(list);
+    }
+
+    private void commitRecord() throws IOException {
+        if (out == null) throw new IOException("History log not open");
+        writeFramed(out, recordBuffer, crc);
+        recordCount++;
+    }
+
+    private static void writePut(FileOutputStream target, ByteArrayOutputStream buffer, DataOutputStream data,
+                                 CRC32 checksum, int list, HistoryManager.HistoryItem item) throws IOException {
+        buffer.reset();
+        data.writeByte(OP_PUT);
+        data.writeByte(list);
+        data.writeLong(item.timestamp);
+        data.writeUTF(item.title);
+        data.writeUTF(item.originalUrl);
+        data.writeUTF(item.freediumUrl);
+        writeFramed(target, buffer, checksum);
+    }
+
+    private static void writeFramed(FileOutputStream target, ByteArrayOutputStream payload, CRC32 checksum)
+            throws IOException {
+        byte[] bytes = payload.toByteArray();
+        checksum.reset();
+        checksum.update(bytes, 0, bytes.length);
+        byte[] frame = new byte[bytes.length + 8];
+        putInt(frame, 0, bytes.length);
+        System.arraycopy(bytes, 0, frame, 4, bytes.length);
+        putInt(frame, bytes.length + 4, (int) checksum.getValue());
+        target.write(frame);
+    }
+
+    private int copyTail(long from, FileOutputStream target) throws IOException {
+        int carried = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long skipped = 0;
+            while (skipped < from) {
+                long n = in.skip(from - skipped);
+                if (n <= 0) return 0;
+                skipped += n;
+            }
+            byte[] frame = new byte[256];
+            while (true) {
+                int length;
+                try { length = in.readInt(); } catch (EOFException e) { break; }
+                if (length <= 0 || length > MAX_RECORD_SIZE) break;
+                if (frame.length < length + 8) frame = new byte[length + 8];
+                putInt(frame, 0, length);
+                in.readFully(frame, 4, length + 4);
+                target.write(frame, 0, length + 8);
+                carried++;
+            }
+        }
+        return carried;
+    }
+
+    private static void apply(byte[] payload, int length, Replay replay) throws IOException {
+        DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(payload, 0, length));
+        byte op = in.readByte();
+        int list = in.readByte();
+        switch (op) {
+            case OP_PUT:
+                long timestamp = in.readLong();
+                String title = in.readUTF();
+                String originalUrl = in.readUTF();
+                String freediumUrl = in.readUTF();
+                replay.put(list, new HistoryManager.HistoryItem(title, originalUrl, freediumUrl, timestamp));
+                break;
+            case OP_REMOVE:
+                replay.remove(list, in.readUTF());
+                break;
+            case OP_CLEAR:
+                replay.clear(list);
+                break;
+        }
+    }
+
+    private static void writeHeader(File target) throws IOException {
+        try (DataOutputStream header = new DataOutputStream(new FileOutputStream(target))) {
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+        }
+    }
+
+    private static void putInt(byte[] b, int offset, int v) {
+        b[offset] = (byte) (v >>> 24);
+        b[offset + 1] = (byte) (v >>> 16);
+        b[offset + 2] = (byte) (v >>> 8);
+        b[offset + 3] = (byte) v;
+    }
+}
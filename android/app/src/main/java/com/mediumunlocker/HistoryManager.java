@@ -2,13 +2,67 @@ package com.inulute.mediumunlocker;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import android.util.MalformedJsonException;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * History, bookmarks and reading positions.
+ *
+ * Threading: every mutation runs as one transaction under the manager's lock against the
+ * in-memory index and only marks the published snapshots stale, so a write costs the same
+ * however long the lists are. The first read after a change rebuilds the immutable snapshot
+ * under the lock and publishes it through a volatile field; other reads
+ * ({@link #getHistory}, {@link #getBookmarks}, {@link #isBookmarked}) do not lock.
+ * Persistence happens later on the I/O thread via the write-behind queue.
+ *
+ * The store itself is read on the I/O thread too, so {@link #getInstance} never blocks on it.
+ * Until it has loaded, reads on the main thread see empty lists and listeners registered with
+ * {@link #addChangeListener} are told once it has; reads on other threads and all writes wait.
+ *
+ * Data from older versions (the SharedPreferences lists and positions) is carried over by
+ * {@link StoreMigration} in the background. Until it has, the legacy lists are merged into the
+ * index by whichever comes first, the first read or the migration, so reads always see them.
+ * Writes go to the store as usual meanwhile; the migration copies only legacy rows nothing has
+ * replaced since and then re-appends the newer ones, so the store replays in index order.
+ */
 public class HistoryManager {
 
     private static final String PREFS_NAME = "MediumUnlockerHistory";
@@ -16,23 +70,108 @@ public class HistoryManager {
     private static final String KEY_BOOKMARKS = "bookmarks";
     private static final String POSITIONS_PREFS = "ReadingPositions";
     private static final String APP_PREFS = "MediumUnlockerPrefs";
+    private static final String KEY_LAST_BACKUP = "last_backup_at";
+    private static final int MIGRATION_CHUNK = 250;
 
-    private static HistoryManager instance;
+    public static final int FORMAT_JSON = 0;
+    public static final int FORMAT_BACKUP = 1;
+    public static final int FORMAT_BACKUP_DELTA = 2;
+
+    private static volatile HistoryManager instance;
     private final SharedPreferences prefs;
     private final SharedPreferences positionPrefs;
+    private final PositionStore positions;
     private final SharedPreferences appPrefs;
+    private volatile HistoryStore store;
+    private final ScheduledExecutorService ioExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean compactionPending = false;
+
+    private volatile boolean storeLoaded;
+    private final CountDownLatch storeReady = new CountDownLatch(1);
+
+    private final StoreMigration migration;
+    private boolean migrating;
+    // Legacy lists, newest first, parsed once by the first read or migration step; see loadLegacy
+    private final Object legacyLock = new Object();
+    private List<HistoryItem> legacyHistory;
+    private List<HistoryItem> legacyBookmarks;
+    private volatile boolean legacyLoaded;
+    private volatile boolean legacyMigrated;
+    // Per list: already written out whole, legacy rows included, by a backend switch or import
+    private final boolean[] legacyRewritten = new boolean[2];
+    private final List<Runnable> changeListeners = new ArrayList<>();
+    // Changes made before the legacy lists were merged into the index
+    private final Set<String> removedBeforeLegacy = new HashSet<>();
+    private final boolean[] clearedBeforeLegacy = new boolean[2];
+    private volatile boolean legacyPositionsPending;
+
+    // Write-behind queue: the latest pending change per (list, url), flushed as one batch
+    private static final long WRITE_BEHIND_MS = 1000;
+    private static final int OP_PUT = 0;
+    private static final int OP_REMOVE = 1;
+    private static final int OP_CLEAR = 2;
+    private LinkedHashMap<String, PendingWrite> pendingWrites = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    private static final class PendingWrite {
+        final int op;
+        final int list;
+        final String url;
+        final HistoryItem item;
+
+        PendingWrite(int op, int list, String url, HistoryItem item) {
+            this.op = op;
+            this.list = list;
+            this.url = url;
+            this.item = item;
+        }
+    }
+
+    // Live state replayed from the store, keyed by UrlCanonicalizer.key, oldest entry first.
+    // Only touched while holding the manager's lock.
+    private final LinkedHashMap<String, HistoryItem> history = new LinkedHashMap<>();
+    private final LinkedHashMap<String, HistoryItem> bookmarks = new LinkedHashMap<>();
+    // Fingerprints of the bookmark keys, edited in place along with the bookmarks map
+    private final UrlFingerprintSet bookmarkKeys = new UrlFingerprintSet();
+    private boolean historyChanged;
+    private boolean bookmarksChanged;
+
+    // Published, never mutated after publication; null when stale, rebuilt by the next read
+    private volatile UrlFingerprintSet bookmarkIndex;
+    private volatile List<HistoryItem> historySnapshot;
+    private volatile List<HistoryItem> bookmarkSnapshot;
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /** Items processed so far; {@code total} is -1 when not known up front. */
+    public interface Progress {
+        void onProgress(int done, int total);
+    }
+
+    private static final int PROGRESS_STEP = 200;
+    private static final int IMPORT_BATCH = 1000;
+
+    private interface Transaction<T> {
+        T run();
+    }
 
     public static class HistoryItem {
-        public String title;
-        public String originalUrl;
-        public String freediumUrl;
-        public long timestamp;
+        public final String title;
+        public final String originalUrl;
+        public final String freediumUrl;
+        public final long timestamp;
+        final String key;
 
         public HistoryItem(String title, String originalUrl, String freediumUrl, long timestamp) {
             this.title = title != null ? title : "";
             this.originalUrl = originalUrl != null ? originalUrl : "";
             this.freediumUrl = freediumUrl != null ? freediumUrl : "";
             this.timestamp = timestamp;
+            this.key = UrlCanonicalizer.key(this.originalUrl);
         }
 
         public JSONObject toJson() throws Exception {
@@ -59,121 +198,1068 @@ public class HistoryManager {
         prefs = app.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         positionPrefs = app.getSharedPreferences(POSITIONS_PREFS, Context.MODE_PRIVATE);
         appPrefs = app.getSharedPreferences(APP_PREFS, Context.MODE_PRIVATE);
+        boolean indexed = appPrefs.getBoolean(SettingsActivity.PREF_SEARCH_INDEX, false);
+        HistoryStore current = indexed ? new SqliteHistoryStore(app) : new HistoryLog(app.getFilesDir());
+        HistoryStore previous = indexed ? new HistoryLog(app.getFilesDir()) : new SqliteHistoryStore(app);
+        synchronized (this) {
+            store = current;
+            positions = new PositionStore(app.getFilesDir(), ioExecutor);
+            List<StoreMigration.Step> steps = Arrays.asList(
+                    this::migrateLegacyLists,
+                    this::migrateLegacyPositions,
+                    this::rekeyPositions);
+            // Migration state lives in the small app prefs file: touching the history prefs here
+            // would parse the whole legacy JSON on the calling thread
+            migration = new StoreMigration(appPrefs, ioExecutor, steps, this::onMigrationComplete);
+            migrating = !migration.isComplete();
+            legacyLoaded = migration.isDone(0);
+            legacyMigrated = legacyLoaded;
+            legacyPositionsPending = !migration.isDone(1);
+        }
+        // Queued first: the migration and every flush run on the same thread after the load
+        ioExecutor.execute(() -> openStore(current, previous));
+        migration.start();
+    }
+
+    private void openStore(HistoryStore current, HistoryStore previous) {
+        try {
+            List<PendingWrite> staleVariants = new ArrayList<>();
+            HistoryStore.Replay replay = new HistoryStore.Replay() {
+                @Override public void put(int list, HistoryItem item) {
+                    HistoryItem previous = putEntry(mapFor(list), item);
+                    if (previous != null && !previous.originalUrl.equals(item.originalUrl)) {
+                        staleVariants.add(new PendingWrite(OP_REMOVE, list, previous.originalUrl, null));
+                    }
+                }
+                @Override public void remove(int list, String originalUrl) { removeVariant(list, originalUrl); }
+                @Override public void clear(int list) { mapFor(list).clear(); }
+            };
+            synchronized (this) {
+                if (previous.exists()) {
+                    // Backend was switched. The old store stays complete until the copy has finished,
+                    // so a new one that is still around next to it is a partial copy: rebuild it
+                    if (current.exists()) current.delete();
+                    previous.open(replay);
+                    current.open(replay);
+                    writeAll(current, history.values(), bookmarks.values());
+                    previous.delete();
+                } else {
+                    current.open(replay);
+                }
+                // Rows for other spellings of an article already in the index
+                for (PendingWrite stale : staleVariants) queueRemove(stale.list, stale.url);
+                rebuildBookmarkKeys();
+                historySnapshot = null;
+                bookmarkSnapshot = null;
+                bookmarkIndex = null;
+            }
+        } finally {
+            storeLoaded = true;
+            storeReady.countDown();
+            mainHandler.post(this::notifyChanged);
+        }
+    }
+
+    /**
+     * True once the store has loaded. Off the main thread this waits for it; on the main thread
+     * it returns false instead, and the caller serves empty lists until the change notification.
+     */
+    private boolean storeReady() {
+        if (storeLoaded) return true;
+        if (Looper.myLooper() == Looper.getMainLooper()) return false;
+        awaitStore();
+        return true;
+    }
+
+    private void awaitStore() {
+        if (storeLoaded) return;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                storeReady.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
     }
 
     public static HistoryManager getInstance(Context context) {
-        if (instance == null) {
-            instance = new HistoryManager(context);
+        HistoryManager local = instance;
+        if (local == null) {
+            synchronized (HistoryManager.class) {
+                local = instance;
+                if (local == null) {
+                    local = new HistoryManager(context);
+                    instance = local;
+                }
+            }
         }
-        return instance;
+        return local;
     }
 
-    public void saveToHistory(String title, String originalUrl, String freediumUrl) {
+    private UrlFingerprintSet liveKeys() {
+        UrlFingerprintSet live = new UrlFingerprintSet();
+        for (String url : history.keySet()) live.add(url);
+        for (String url : bookmarks.keySet()) live.add(url);
+        return live;
+    }
+
+    private void dropPositionIfOrphaned(String key) {
+        if (!history.containsKey(key) && !bookmarks.containsKey(key)) {
+            positions.remove(key);
+        }
+    }
+
+    /** Removes the entry for {@code originalUrl} only if it is that exact spelling. */
+    private void removeVariant(int list, String originalUrl) {
+        LinkedHashMap<String, HistoryItem> map = mapFor(list);
+        String key = UrlCanonicalizer.key(originalUrl);
+        HistoryItem current = map.get(key);
+        if (current != null && current.originalUrl.equals(originalUrl)) map.remove(key);
+    }
+
+    private static void writeAll(HistoryStore target, Collection<HistoryItem> historyItems,
+                                 Collection<HistoryItem> bookmarkItems) {
+        target.batch(() -> {
+            target.clear(HistoryStore.LIST_HISTORY);
+            target.clear(HistoryStore.LIST_BOOKMARKS);
+            for (HistoryItem item : historyItems) target.put(HistoryStore.LIST_HISTORY, item);
+            for (HistoryItem item : bookmarkItems) target.put(HistoryStore.LIST_BOOKMARKS, item);
+        });
+    }
+
+    /**
+     * Moves all history and bookmarks to the SQLite (indexed) or log backend. The copy runs on
+     * the I/O thread; changes made meanwhile stay queued and are flushed to the new store.
+     */
+    public void setSearchIndexEnabled(Context context, boolean enabled) {
+        Context app = context.getApplicationContext();
+        ioExecutor.execute(() -> switchStore(app, enabled));
+    }
+
+    // I/O thread only, so no flush, compaction or migration chunk runs against a store mid-switch
+    private void switchStore(Context app, boolean enabled) {
+        if ((store instanceof SqliteHistoryStore) == enabled) return;
+        HistoryStore next = enabled ? new SqliteHistoryStore(app) : new HistoryLog(app.getFilesDir());
+        next.open(new HistoryStore.Replay() {
+            @Override public void put(int list, HistoryItem item) { }
+            @Override public void remove(int list, String originalUrl) { }
+            @Override public void clear(int list) { }
+        });
+        List<HistoryItem> historyItems;
+        List<HistoryItem> bookmarkItems;
+        boolean withLegacy;
+        synchronized (this) {
+            historyItems = new ArrayList<>(history.values());
+            bookmarkItems = new ArrayList<>(bookmarks.values());
+            withLegacy = legacyLoaded;
+        }
+        // Queued writes already in these lists are replayed against the new store later, harmlessly
+        writeAll(next, historyItems, bookmarkItems);
+        HistoryStore old;
+        synchronized (this) {
+            if (withLegacy) Arrays.fill(legacyRewritten, true);
+            old = store;
+            store = next;
+        }
+        old.delete();
+    }
+
+    // ==================== Migration ====================
+
+    /**
+     * Parses the legacy lists and merges them into the index, once. Called by reads until it
+     * has run, so they never miss legacy items; that costs the one parse every read used to
+     * make. Returns whether this call did the merge.
+     */
+    private boolean loadLegacy() {
+        synchronized (legacyLock) {
+            if (legacyLoaded) return false;
+            List<HistoryItem> parsedHistory = loadList(KEY_HISTORY);
+            List<HistoryItem> parsedBookmarks = loadList(KEY_BOOKMARKS);
+            transaction(() -> {
+                mergeLegacy(HistoryStore.LIST_HISTORY, parsedHistory);
+                mergeLegacy(HistoryStore.LIST_BOOKMARKS, parsedBookmarks);
+                legacyHistory = parsedHistory;
+                legacyBookmarks = parsedBookmarks;
+                legacyLoaded = true;
+                removedBeforeLegacy.clear();
+                return null;
+            });
+            return true;
+        }
+    }
+
+    /**
+     * Step 1: legacy history and bookmark JSON into the store, oldest first. Only rows the index
+     * still holds as the legacy copy are written; anything changed since went to the store on
+     * its own. The last chunk re-appends those newer rows so they replay after the legacy ones.
+     */
+    private int migrateLegacyLists(int cursor) {
+        if (loadLegacy()) mainHandler.post(this::notifyChanged);
+        List<HistoryItem> h;
+        List<HistoryItem> b;
+        synchronized (this) {
+            h = legacyHistory;
+            b = legacyBookmarks;
+        }
+        if (h == null) return -1;
+        int total = h.size() + b.size();
+        int end = Math.min(total, cursor + MIGRATION_CHUNK);
+        List<HistoryItem> chunk = new ArrayList<>();
+        List<Integer> lists = new ArrayList<>();
+        synchronized (this) {
+            for (int i = cursor; i < end; i++) {
+                int list = i < h.size() ? HistoryStore.LIST_HISTORY : HistoryStore.LIST_BOOKMARKS;
+                HistoryItem item = i < h.size() ? h.get(h.size() - 1 - i) : b.get(total - 1 - i);
+                if (legacyRewritten[list] || mapFor(list).get(item.key) != item) continue;
+                chunk.add(item);
+                lists.add(list);
+            }
+        }
+        // I/O thread: queued writes are flushed here too, so none lands between check and write
+        HistoryStore target = store;
+        if (!chunk.isEmpty()) {
+            target.batch(() -> {
+                for (int i = 0; i < chunk.size(); i++) target.put(lists.get(i), chunk.get(i));
+            });
+        }
+        if (end < total) return end;
+        if (total > 0) appendNewerThanLegacy(h, b);
+        prefs.edit().remove(KEY_HISTORY).remove(KEY_BOOKMARKS).commit();
+        synchronized (this) {
+            legacyHistory = null;
+            legacyBookmarks = null;
+        }
+        legacyMigrated = true;
+        return -1;
+    }
+
+    private void appendNewerThanLegacy(List<HistoryItem> h, List<HistoryItem> b) {
+        Set<HistoryItem> legacy = Collections.newSetFromMap(new IdentityHashMap<>());
+        legacy.addAll(h);
+        legacy.addAll(b);
+        List<HistoryItem> newerHistory = new ArrayList<>();
+        List<HistoryItem> newerBookmarks = new ArrayList<>();
+        synchronized (this) {
+            if (!legacyRewritten[HistoryStore.LIST_HISTORY]) {
+                for (HistoryItem item : history.values()) if (!legacy.contains(item)) newerHistory.add(item);
+            }
+            if (!legacyRewritten[HistoryStore.LIST_BOOKMARKS]) {
+                for (HistoryItem item : bookmarks.values()) if (!legacy.contains(item)) newerBookmarks.add(item);
+            }
+        }
+        if (newerHistory.isEmpty() && newerBookmarks.isEmpty()) return;
+        HistoryStore target = store;
+        target.batch(() -> {
+            for (HistoryItem item : newerHistory) target.put(HistoryStore.LIST_HISTORY, item);
+            for (HistoryItem item : newerBookmarks) target.put(HistoryStore.LIST_BOOKMARKS, item);
+        });
+    }
+
+    /**
+     * Puts legacy items behind everything already in the index. Entries replayed from an
+     * interrupted earlier run keep their legacy position; anything added, changed or removed
+     * this session wins over the legacy copy.
+     */
+    private void mergeLegacy(int list, List<HistoryItem> legacyNewestFirst) {
+        if (clearedBeforeLegacy[list] || legacyNewestFirst.isEmpty()) return;
+        LinkedHashMap<String, HistoryItem> map = mapFor(list);
+        LinkedHashMap<String, HistoryItem> merged = new LinkedHashMap<>();
+        for (int i = legacyNewestFirst.size() - 1; i >= 0; i--) {
+            HistoryItem item = legacyNewestFirst.get(i);
+            if (!removedBeforeLegacy.contains(list + item.key)) putEntry(merged, item);
+        }
+        for (HistoryItem item : map.values()) {
+            HistoryItem legacy = merged.get(item.key);
+            if (legacy != null && legacy.timestamp == item.timestamp
+                    && legacy.originalUrl.equals(item.originalUrl)) continue;
+            putEntry(merged, item);
+        }
+        map.clear();
+        map.putAll(merged);
+        if (list == HistoryStore.LIST_BOOKMARKS) {
+            rebuildBookmarkKeys();
+            bookmarksChanged = true;
+            return;
+        }
         int maxHistory = appPrefs.getInt(SettingsActivity.PREF_MAX_HISTORY, 100);
-        List<HistoryItem> history = getHistory();
-        List<HistoryItem> filtered = new ArrayList<>();
-        for (HistoryItem item : history) {
-            if (!item.originalUrl.equals(originalUrl)) filtered.add(item);
+        Iterator<HistoryItem> oldest = map.values().iterator();
+        while (map.size() > maxHistory && oldest.hasNext()) {
+            HistoryItem evicted = oldest.next();
+            oldest.remove();
+            queueRemove(list, evicted.originalUrl);
+        }
+        historyChanged = true;
+    }
+
+    /** Step 2: legacy ReadingPositions prefs (scroll pixels by raw URL) into the position store. */
+    private int migrateLegacyPositions(int cursor) {
+        Map<String, ?> legacy = positionPrefs.getAll();
+        if (legacy.isEmpty()) {
+            legacyPositionsPending = false;
+            return -1;
+        }
+        SharedPreferences.Editor editor = positionPrefs.edit();
+        int n = 0;
+        for (Map.Entry<String, ?> e : legacy.entrySet()) {
+            if (n++ == MIGRATION_CHUNK) break;
+            String key = UrlCanonicalizer.key(e.getKey());
+            // A position saved this session is newer than the legacy one
+            if (e.getValue() instanceof Integer && positions.get(key) == null) {
+                positions.put(key, (Integer) e.getValue(), -1f);
+            }
+            editor.remove(e.getKey());
+        }
+        positions.writeNow();
+        editor.commit();
+        return cursor + n;
+    }
+
+    /** Step 3: positions saved by builds that keyed them by raw URL move to the identity key. */
+    private int rekeyPositions(int cursor) {
+        List<HistoryItem> items;
+        synchronized (this) {
+            items = new ArrayList<>(history.values());
+            items.addAll(bookmarks.values());
         }
-        filtered.add(0, new HistoryItem(title, originalUrl, freediumUrl, System.currentTimeMillis()));
-        if (filtered.size() > maxHistory) filtered = filtered.subList(0, maxHistory);
-        saveList(KEY_HISTORY, filtered);
+        for (HistoryItem item : items) positions.rekey(item.originalUrl, item.key);
+        return -1;
+    }
+
+    private void onMigrationComplete() {
+        synchronized (this) {
+            migrating = false;
+            legacyPositionsPending = false;
+            positions.retainAll(liveKeys());
+        }
+    }
+
+    /**
+     * Runs {@code listener} on the main thread when the lists change behind the caller's back,
+     * i.e. when the migration merges the legacy lists before any read did.
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
+    }
+
+    private void notifyChanged() {
+        for (Runnable listener : new ArrayList<>(changeListeners)) listener.run();
+    }
+
+    private void prunePositions() {
+        // Until migration completes the index may not hold every live article yet
+        if (!migrating) positions.retainAll(liveKeys());
+    }
+
+    // ==================== Transactions ====================
+
+    /**
+     * Runs {@code body} atomically against the in-memory index and retires the snapshots it
+     * made stale before any other writer or reader can take the lock.
+     */
+    private synchronized <T> T transaction(Transaction<T> body) {
+        try {
+            return body.run();
+        } finally {
+            if (historyChanged) historySnapshot = null;
+            if (bookmarksChanged) {
+                bookmarkSnapshot = null;
+                bookmarkIndex = null;
+            }
+            historyChanged = false;
+            bookmarksChanged = false;
+        }
+    }
+
+    private synchronized List<HistoryItem> publishHistory() {
+        if (historySnapshot == null) historySnapshot = newestFirst(history);
+        return historySnapshot;
+    }
+
+    private synchronized List<HistoryItem> publishBookmarks() {
+        if (bookmarkSnapshot == null) bookmarkSnapshot = newestFirst(bookmarks);
+        return bookmarkSnapshot;
+    }
+
+    private synchronized UrlFingerprintSet publishBookmarkIndex() {
+        if (bookmarkIndex == null) bookmarkIndex = bookmarkKeys.copy();
+        return bookmarkIndex;
+    }
+
+    private void rebuildBookmarkKeys() {
+        bookmarkKeys.clear();
+        for (String key : bookmarks.keySet()) bookmarkKeys.add(key);
+    }
+
+    public void saveToHistory(String title, String originalUrl, String freediumUrl) {
+        int maxHistory = appPrefs.getInt(SettingsActivity.PREF_MAX_HISTORY, 100);
+        HistoryItem item = new HistoryItem(title, UrlCanonicalizer.clean(originalUrl), freediumUrl,
+                System.currentTimeMillis());
+        awaitStore();
+        transaction(() -> {
+            putItem(HistoryStore.LIST_HISTORY, item);
+            Iterator<HistoryItem> oldest = history.values().iterator();
+            while (history.size() > maxHistory && oldest.hasNext()) {
+                HistoryItem evicted = oldest.next();
+                oldest.remove();
+                queueRemove(HistoryStore.LIST_HISTORY, evicted.originalUrl);
+                dropPositionIfOrphaned(evicted.key);
+            }
+            historyChanged = true;
+            return null;
+        });
     }
 
     // ==================== Reading Positions ====================
 
-    public void savePosition(String originalUrl, int scrollY) {
+    public void savePosition(String originalUrl, int scrollY, float fraction) {
         if (originalUrl == null || originalUrl.isEmpty()) return;
-        positionPrefs.edit().putInt(originalUrl, scrollY).apply();
+        positions.put(UrlCanonicalizer.key(originalUrl), scrollY, fraction);
     }
 
     public int getPosition(String originalUrl) {
         if (originalUrl == null || originalUrl.isEmpty()) return 0;
+        PositionStore.Position p = positions.get(UrlCanonicalizer.key(originalUrl));
+        if (p == null && legacyPositionsPending) return legacyPosition(originalUrl);
+        return p != null ? p.scrollY : 0;
+    }
+
+    /** Legacy positions are keyed by the URL as it was saved, before it was cleaned. */
+    private int legacyPosition(String originalUrl) {
+        String key = UrlCanonicalizer.key(originalUrl);
+        HistoryItem item;
+        synchronized (this) {
+            item = history.get(key);
+            if (item == null) item = bookmarks.get(key);
+        }
+        if (item != null && positionPrefs.contains(item.originalUrl)) {
+            return positionPrefs.getInt(item.originalUrl, 0);
+        }
         return positionPrefs.getInt(originalUrl, 0);
     }
 
+    /** Saved scroll offset as a fraction of document height, or -1 if unknown. */
+    public float getPositionFraction(String originalUrl) {
+        if (originalUrl == null || originalUrl.isEmpty()) return -1f;
+        PositionStore.Position p = positions.get(UrlCanonicalizer.key(originalUrl));
+        return p != null ? p.fraction : -1f;
+    }
+
     public void clearPositions() {
-        positionPrefs.edit().clear().apply();
+        positions.clear();
     }
 
     public void removeFromHistory(String originalUrl) {
-        List<HistoryItem> history = getHistory();
-        List<HistoryItem> filtered = new ArrayList<>();
-        for (HistoryItem item : history) {
-            if (!item.originalUrl.equals(originalUrl)) filtered.add(item);
-        }
-        saveList(KEY_HISTORY, filtered);
+        String key = UrlCanonicalizer.key(originalUrl);
+        awaitStore();
+        transaction(() -> {
+            HistoryItem removed = history.remove(key);
+            if (removed == null) return null;
+            queueRemove(HistoryStore.LIST_HISTORY, removed.originalUrl);
+            historyChanged = true;
+            dropPositionIfOrphaned(key);
+            return null;
+        });
     }
 
     public void addBookmark(String title, String originalUrl, String freediumUrl) {
-        List<HistoryItem> bookmarks = getBookmarks();
-        List<HistoryItem> filtered = new ArrayList<>();
-        for (HistoryItem item : bookmarks) {
-            if (!item.originalUrl.equals(originalUrl)) filtered.add(item);
-        }
-        filtered.add(0, new HistoryItem(title, originalUrl, freediumUrl, System.currentTimeMillis()));
-        saveList(KEY_BOOKMARKS, filtered);
+        HistoryItem item = new HistoryItem(title, UrlCanonicalizer.clean(originalUrl), freediumUrl,
+                System.currentTimeMillis());
+        awaitStore();
+        transaction(() -> {
+            putBookmark(item);
+            return null;
+        });
     }
 
     public void removeBookmark(String originalUrl) {
-        List<HistoryItem> bookmarks = getBookmarks();
-        List<HistoryItem> filtered = new ArrayList<>();
-        for (HistoryItem item : bookmarks) {
-            if (!item.originalUrl.equals(originalUrl)) filtered.add(item);
-        }
-        saveList(KEY_BOOKMARKS, filtered);
+        String key = UrlCanonicalizer.key(originalUrl);
+        awaitStore();
+        transaction(() -> {
+            deleteBookmark(key);
+            return null;
+        });
+    }
+
+    /** Atomically adds or removes the bookmark; returns whether the URL is now bookmarked. */
+    public boolean toggleBookmark(String title, String originalUrl, String freediumUrl) {
+        HistoryItem item = new HistoryItem(title, UrlCanonicalizer.clean(originalUrl), freediumUrl,
+                System.currentTimeMillis());
+        awaitStore();
+        if (!legacyLoaded) loadLegacy();
+        return transaction(() -> {
+            if (bookmarks.containsKey(item.key)) {
+                deleteBookmark(item.key);
+                return false;
+            }
+            putBookmark(item);
+            return true;
+        });
+    }
+
+    private void putBookmark(HistoryItem item) {
+        putItem(HistoryStore.LIST_BOOKMARKS, item);
+        bookmarkKeys.add(item.key);
+        bookmarksChanged = true;
+    }
+
+    private void deleteBookmark(String key) {
+        HistoryItem removed = bookmarks.remove(key);
+        if (removed == null) return;
+        queueRemove(HistoryStore.LIST_BOOKMARKS, removed.originalUrl);
+        bookmarkKeys.remove(key);
+        bookmarksChanged = true;
+        dropPositionIfOrphaned(key);
     }
 
     public boolean isBookmarked(String originalUrl) {
-        if (originalUrl == null) return false;
-        for (HistoryItem item : getBookmarks()) {
-            if (item.originalUrl.equals(originalUrl)) return true;
-        }
-        return false;
+        if (originalUrl == null || !storeReady()) return false;
+        if (!legacyLoaded) loadLegacy();
+        UrlFingerprintSet index = bookmarkIndex;
+        if (index == null) index = publishBookmarkIndex();
+        return index.contains(UrlCanonicalizer.keyFingerprint(originalUrl));
     }
 
     public List<HistoryItem> getHistory() {
-        return loadList(KEY_HISTORY);
+        if (!storeReady()) return Collections.emptyList();
+        if (!legacyLoaded) loadLegacy();
+        List<HistoryItem> snapshot = historySnapshot;
+        return snapshot != null ? snapshot : publishHistory();
     }
 
     public List<HistoryItem> getBookmarks() {
-        return loadList(KEY_BOOKMARKS);
+        if (!storeReady()) return Collections.emptyList();
+        if (!legacyLoaded) loadLegacy();
+        List<HistoryItem> snapshot = bookmarkSnapshot;
+        return snapshot != null ? snapshot : publishBookmarks();
+    }
+
+    /**
+     * Ranked, paged search over history or bookmarks. Runs the query against the full-text
+     * index when the SQLite backend is active, otherwise scans the in-memory snapshot with the
+     * same rules (see {@link HistoryStore#search}), so both backends return the same items.
+     * Call off the main thread, or use {@link #searchAsync}.
+     */
+    public List<HistoryItem> search(boolean inBookmarks, String query, int offset, int limit) {
+        int list = inBookmarks ? HistoryStore.LIST_BOOKMARKS : HistoryStore.LIST_HISTORY;
+        awaitStore();
+        // Legacy rows are not in the full-text index until step 1 has copied them
+        List<HistoryItem> indexed = legacyMigrated ? store.search(list, query, offset, limit) : null;
+        if (indexed != null) return indexed;
+
+        List<String> terms = searchTerms(query);
+        if (terms.isEmpty()) return new ArrayList<>();
+        List<HistoryItem> snapshot = inBookmarks ? getBookmarks() : getHistory();
+        List<HistoryItem> titleHits = new ArrayList<>();
+        List<HistoryItem> urlHits = new ArrayList<>();
+        for (HistoryItem item : snapshot) {
+            if (matchesAll(terms, item.title, null)) titleHits.add(item);
+            else if (matchesAll(terms, item.title, item.originalUrl)) urlHits.add(item);
+        }
+        titleHits.addAll(urlHits);
+        if (offset >= titleHits.size()) return new ArrayList<>();
+        return new ArrayList<>(titleHits.subList(offset, Math.min(titleHits.size(), offset + limit)));
+    }
+
+    /** The words of a search query: runs of letters and digits. */
+    static List<String> searchTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        for (String term : query.split("[^\\p{L}\\p{N}]+")) {
+            if (!term.isEmpty()) terms.add(term);
+        }
+        return terms;
+    }
+
+    /** True if every term starts a word of {@code title} or, when given, of {@code url}. */
+    private static boolean matchesAll(List<String> terms, String title, String url) {
+        for (String term : terms) {
+            if (!startsWord(title, term) && (url == null || !startsWord(url, term))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether a word of {@code text} starts with {@code prefix}, ignoring case. Word characters
+     * are ASCII letters and digits plus anything non-ASCII, as in the FTS "simple" tokenizer.
+     */
+    private static boolean startsWord(String text, String prefix) {
+        int last = text.length() - prefix.length();
+        for (int i = 0; i <= last; i++) {
+            if ((i == 0 || !isWordChar(text.charAt(i - 1)))
+                    && text.regionMatches(true, i, prefix, 0, prefix.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWordChar(char c) {
+        return c >= 0x80 || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
     }
 
     public void clearHistory() {
-        prefs.edit().remove(KEY_HISTORY).apply();
+        awaitStore();
+        transaction(() -> {
+            history.clear();
+            queueClear(HistoryStore.LIST_HISTORY);
+            historyChanged = true;
+            prunePositions();
+            return null;
+        });
     }
 
     public void clearBookmarks() {
-        prefs.edit().remove(KEY_BOOKMARKS).apply();
+        awaitStore();
+        transaction(() -> {
+            bookmarks.clear();
+            queueClear(HistoryStore.LIST_BOOKMARKS);
+            bookmarkKeys.clear();
+            bookmarksChanged = true;
+            prunePositions();
+            return null;
+        });
+    }
+
+    /**
+     * Streams history and bookmarks to {@code out} as JSON. Blocking; stops with an
+     * {@link InterruptedIOException} if the calling thread is interrupted.
+     */
+    public void exportTo(OutputStream out, Progress progress) throws IOException {
+        List<HistoryItem> historyItems = getHistory();
+        List<HistoryItem> bookmarkItems = getBookmarks();
+        int total = historyItems.size() + bookmarkItems.size();
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+        writer.setIndent("  ");
+        writer.beginObject();
+        int done = writeItems(writer, "history", historyItems, 0, total, progress);
+        writeItems(writer, "bookmarks", bookmarkItems, done, total, progress);
+        writer.name("exportedAt").value(System.currentTimeMillis());
+        writer.name("version").value(1);
+        writer.endObject();
+        writer.flush();
     }
 
-    public String exportToJson() {
+    /**
+     * Writes a {@link CompactBackup}. With {@code delta} only entries newer than the last
+     * compact backup are included. Returns the new watermark.
+     */
+    public long exportBackup(OutputStream out, boolean delta, Progress progress) throws IOException {
+        long since = delta ? appPrefs.getLong(KEY_LAST_BACKUP, 0) : 0;
+        long exportedAt = System.currentTimeMillis();
+        CompactBackup.write(out, getHistory(), getBookmarks(), since, exportedAt, progress);
+        return exportedAt;
+    }
+
+    public boolean hasBackupWatermark() {
+        return appPrefs.getLong(KEY_LAST_BACKUP, 0) > 0;
+    }
+
+    /**
+     * Imports the lists present in a JSON export or a {@link CompactBackup}, detected from the
+     * first bytes, either replacing the current lists or merging into them (see
+     * {@link #mergeBatch}); delta backups are always merged. Items are applied in batches as
+     * they are read, so memory does not grow with the size of the document. Returns false if
+     * the document is not a valid export; items read before the point where it broke off stay
+     * imported.
+     */
+    public boolean importFrom(InputStream in, boolean merge, Progress progress) throws IOException {
+        // Merge into the full lists, and let the import's save supersede the legacy rows
+        awaitStore();
+        if (!legacyLoaded) loadLegacy();
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        if (CompactBackup.detect(buffered)) {
+            try {
+                CompactBackup.Reader backup = CompactBackup.open(buffered);
+                backup.readItems(new Importer(merge || backup.delta), progress);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                return false;
+            }
+            return true;
+        }
+        JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(buffered, "UTF-8")));
+        Importer importer = new Importer(merge);
+        int[] done = {0};
         try {
-            JSONObject root = new JSONObject();
-            root.put("history", listToJsonArray(getHistory()));
-            root.put("bookmarks", listToJsonArray(getBookmarks()));
-            root.put("exportedAt", System.currentTimeMillis());
-            root.put("version", 1);
-            return root.toString(2);
-        } catch (Exception e) {
-            return null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("history".equals(name)) readItems(reader, HistoryStore.LIST_HISTORY, importer, done, progress);
+                else if ("bookmarks".equals(name)) readItems(reader, HistoryStore.LIST_BOOKMARKS, importer, done, progress);
+                else reader.skipValue();
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | EOFException | IllegalStateException | NumberFormatException e) {
+            // Truncated or not a history export
+            return false;
         }
+        if (progress != null) progress.onProgress(done[0], done[0]);
+        return true;
     }
 
-    public boolean importFromJson(String json) {
-        try {
-            JSONObject root = new JSONObject(json);
-            if (root.has("history")) {
-                saveList(KEY_HISTORY, jsonArrayToList(root.getJSONArray("history")));
+    private static int writeItems(JsonWriter writer, String name, List<HistoryItem> items,
+                                  int done, int total, Progress progress) throws IOException {
+        writer.name(name).beginArray();
+        for (HistoryItem item : items) {
+            checkInterrupted();
+            writer.beginObject();
+            writer.name("title").value(item.title);
+            writer.name("originalUrl").value(item.originalUrl);
+            writer.name("freediumUrl").value(item.freediumUrl);
+            writer.name("timestamp").value(item.timestamp);
+            writer.endObject();
+            if (++done % PROGRESS_STEP == 0 && progress != null) progress.onProgress(done, total);
+        }
+        writer.endArray();
+        if (progress != null) progress.onProgress(done, total);
+        return done;
+    }
+
+    private static void readItems(JsonReader reader, int list, ItemSink sink, int[] done, Progress progress)
+            throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            checkInterrupted();
+            String title = "", originalUrl = "", freediumUrl = "";
+            long timestamp = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (field) {
+                    case "title": title = reader.nextString(); break;
+                    case "originalUrl": originalUrl = reader.nextString(); break;
+                    case "freediumUrl": freediumUrl = reader.nextString(); break;
+                    case "timestamp": timestamp = reader.nextLong(); break;
+                    default: reader.skipValue();
+                }
             }
-            if (root.has("bookmarks")) {
-                saveList(KEY_BOOKMARKS, jsonArrayToList(root.getJSONArray("bookmarks")));
+            reader.endObject();
+            sink.add(list, new HistoryItem(title, originalUrl, freediumUrl, timestamp));
+            if (++done[0] % PROGRESS_STEP == 0 && progress != null) progress.onProgress(done[0], -1);
+        }
+        reader.endArray();
+        sink.endList(list);
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Cancelled");
+    }
+
+    /** Receives imported items list by list, each list newest first. */
+    interface ItemSink {
+        void add(int list, HistoryItem item);
+
+        void endList(int list);
+    }
+
+    /**
+     * Applies imported items list by list. Merging applies them {@link #IMPORT_BATCH} at a time,
+     * each batch one transaction that also queues the rewritten list, so whatever was merged
+     * before a failure is kept consistently. Replacing stages the list and swaps it in only once
+     * the document's list has ended, so a broken file or a cancel leaves the old list as it was.
+     */
+    private final class Importer implements ItemSink {
+        private final boolean merge;
+        private final int maxHistory = appPrefs.getInt(SettingsActivity.PREF_MAX_HISTORY, 100);
+        private final List<HistoryItem> batch = new ArrayList<>();
+        // Replace mode: newest copy per identity key of the list being read
+        private final HashMap<String, HistoryItem> staged = new HashMap<>();
+        private int list = -1;
+
+        Importer(boolean merge) {
+            this.merge = merge;
+        }
+
+        @Override
+        public void add(int list, HistoryItem item) {
+            if (list != this.list) start(list);
+            if (merge) {
+                batch.add(item);
+                if (batch.size() == IMPORT_BATCH) mergeBatch();
+                return;
             }
-            return true;
-        } catch (Exception e) {
-            return false;
+            HistoryItem existing = staged.get(item.key);
+            if (existing == null || item.timestamp > existing.timestamp) staged.put(item.key, item);
+            // History keeps only the newest maxHistory anyway; trim so staging stays bounded
+            if (list == HistoryStore.LIST_HISTORY && staged.size() >= maxHistory + IMPORT_BATCH) trimStaged();
+        }
+
+        @Override
+        public void endList(int list) {
+            if (list != this.list) start(list);
+            if (merge) {
+                mergeBatch();
+            } else {
+                List<HistoryItem> items = new ArrayList<>(staged.values());
+                staged.clear();
+                transaction(() -> {
+                    // Replacing starts with an empty list, even when the document's list is empty
+                    mapFor(list).clear();
+                    if (list == HistoryStore.LIST_BOOKMARKS) {
+                        rebuildBookmarkKeys();
+                        bookmarksChanged = true;
+                    } else {
+                        historyChanged = true;
+                    }
+                    HistoryManager.this.mergeBatch(list, items, cap(list));
+                    save(list);
+                    return null;
+                });
+            }
+            this.list = -1;
+        }
+
+        private void start(int list) {
+            batch.clear();
+            staged.clear();
+            this.list = list;
+        }
+
+        private void mergeBatch() {
+            if (batch.isEmpty()) return;
+            int target = list;
+            transaction(() -> {
+                HistoryManager.this.mergeBatch(target, batch, cap(target));
+                save(target);
+                return null;
+            });
+            batch.clear();
+        }
+
+        private void trimStaged() {
+            List<HistoryItem> items = new ArrayList<>(staged.values());
+            Collections.sort(items, (a, b) -> Long.compare(b.timestamp, a.timestamp));
+            staged.clear();
+            for (HistoryItem item : items.subList(0, maxHistory)) staged.put(item.key, item);
         }
+
+        private int cap(int target) {
+            return target == HistoryStore.LIST_HISTORY ? maxHistory : Integer.MAX_VALUE;
+        }
+
+        // Under the lock. Earlier queued rewrites of the list are superseded by this one
+        private void save(int target) {
+            queueClear(target);
+            for (HistoryItem item : mapFor(target).values()) queuePut(target, item);
+            legacyRewritten[target] = true;
+            prunePositions();
+        }
+    }
+
+    /**
+     * Merges imported items into a list in memory: a hash join on the identity key keeps the
+     * copy with the newest timestamp, the union is ordered by timestamp and the oldest entries
+     * beyond {@code cap} are dropped. The list is already in timestamp order, so the sort is
+     * close to linear: O(n + m log m) for n local and m imported items.
+     */
+    private void mergeBatch(int list, List<HistoryItem> items, int cap) {
+        LinkedHashMap<String, HistoryItem> map = mapFor(list);
+        HashMap<String, HistoryItem> incoming = new HashMap<>();
+        for (HistoryItem item : items) {
+            HistoryItem existing = incoming.get(item.key);
+            if (existing == null) existing = map.get(item.key);
+            if (existing == null || item.timestamp > existing.timestamp) incoming.put(item.key, item);
+        }
+        if (incoming.isEmpty()) return;
+        List<HistoryItem> merged = new ArrayList<>(map.size() + incoming.size());
+        for (HistoryItem item : map.values()) {
+            if (!incoming.containsKey(item.key)) merged.add(item);
+        }
+        merged.addAll(incoming.values());
+        Collections.sort(merged, (a, b) -> Long.compare(a.timestamp, b.timestamp));
+        map.clear();
+        for (HistoryItem item : merged.subList(Math.max(0, merged.size() - cap), merged.size())) {
+            map.put(item.key, item);
+        }
+        if (list == HistoryStore.LIST_BOOKMARKS) {
+            rebuildBookmarkKeys();
+            bookmarksChanged = true;
+        } else {
+            historyChanged = true;
+        }
+    }
+
+    // ==================== Async API ====================
+
+    /** Runs {@code task} on the background worker and delivers its result on the main thread. */
+    public <T> Future<?> submit(Callable<T> task, Callback<T> callback) {
+        return worker.submit(() -> {
+            T result;
+            try {
+                result = task.call();
+            } catch (Exception e) {
+                result = null;
+            }
+            if (Thread.currentThread().isInterrupted() || callback == null) return;
+            final T delivered = result;
+            mainHandler.post(() -> callback.onResult(delivered));
+        });
+    }
+
+    public Future<?> searchAsync(boolean inBookmarks, String query, int offset, int limit,
+                                 Callback<List<HistoryItem>> callback) {
+        return submit(() -> search(inBookmarks, query, offset, limit), callback);
+    }
+
+    /**
+     * Opens a stream on the worker and exports to it in one of the {@code FORMAT_} formats.
+     * The callback receives true on success and false on failure; it is not called if the
+     * returned future is cancelled.
+     */
+    public Future<?> exportAsync(Callable<OutputStream> open, int format, Progress progress,
+                                 Callback<Boolean> callback) {
+        Progress onMain = onMainThread(progress);
+        return submit(() -> {
+            try (OutputStream out = open.call()) {
+                if (format == FORMAT_JSON) {
+                    exportTo(out, onMain);
+                } else {
+                    long watermark = exportBackup(out, format == FORMAT_BACKUP_DELTA, onMain);
+                    appPrefs.edit().putLong(KEY_LAST_BACKUP, watermark).apply();
+                }
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }, callback);
+    }
+
+    /**
+     * Opens a stream on the worker and imports from it. The callback receives true on success,
+     * false for an invalid document and null if the stream could not be read.
+     */
+    public Future<?> importAsync(Callable<InputStream> open, boolean merge, Progress progress,
+                                 Callback<Boolean> callback) {
+        Progress onMain = onMainThread(progress);
+        return submit(() -> {
+            try (InputStream in = open.call()) {
+                return importFrom(in, merge, onMain);
+            } catch (IOException e) {
+                return null;
+            }
+        }, callback);
+    }
+
+    private Progress onMainThread(Progress progress) {
+        if (progress == null) return null;
+        return (done, total) -> mainHandler.post(() -> progress.onProgress(done, total));
+    }
+
+    // ==================== Internals ====================
+
+    private LinkedHashMap<String, HistoryItem> mapFor(int list) {
+        return list == HistoryStore.LIST_BOOKMARKS ? bookmarks : history;
+    }
+
+    /** Returns the entry it replaced, which may be a different spelling of the same article. */
+    private static HistoryItem putEntry(LinkedHashMap<String, HistoryItem> map, HistoryItem item) {
+        // Re-inserting moves the entry to the newest end
+        HistoryItem previous = map.remove(item.key);
+        map.put(item.key, item);
+        return previous;
+    }
+
+    private void putItem(int list, HistoryItem item) {
+        HistoryItem previous = putEntry(mapFor(list), item);
+        if (previous != null && !previous.originalUrl.equals(item.originalUrl)) {
+            queueRemove(list, previous.originalUrl);
+        }
+        queuePut(list, item);
+    }
+
+    private static List<HistoryItem> newestFirst(LinkedHashMap<String, HistoryItem> map) {
+        List<HistoryItem> list = new ArrayList<>(map.values());
+        Collections.reverse(list);
+        return Collections.unmodifiableList(list);
+    }
+
+    private void queuePut(int list, HistoryItem item) {
+        String key = list + item.originalUrl;
+        pendingWrites.remove(key);
+        pendingWrites.put(key, new PendingWrite(OP_PUT, list, item.originalUrl, item));
+        scheduleFlush();
+    }
+
+    private void queueRemove(int list, String originalUrl) {
+        if (!legacyLoaded) removedBeforeLegacy.add(list + UrlCanonicalizer.key(originalUrl));
+        String key = list + originalUrl;
+        pendingWrites.remove(key);
+        pendingWrites.put(key, new PendingWrite(OP_REMOVE, list, originalUrl, null));
+        scheduleFlush();
+    }
+
+    private void queueClear(int list) {
+        if (!legacyLoaded) clearedBeforeLegacy[list] = true;
+        // Earlier writes to this list are superseded; later ones must land after the clear
+        for (Iterator<PendingWrite> it = pendingWrites.values().iterator(); it.hasNext(); ) {
+            if (it.next().list == list) it.remove();
+        }
+        pendingWrites.put("clear:" + list, new PendingWrite(OP_CLEAR, list, null, null));
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) return;
+        flushScheduled = true;
+        ioExecutor.schedule(this::flushPending, WRITE_BEHIND_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Writes any queued changes now, on the background I/O thread. */
+    public void flush() {
+        ioExecutor.execute(this::flushPending);
+    }
+
+    private void flushPending() {
+        final LinkedHashMap<String, PendingWrite> batch;
+        final HistoryStore target;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pendingWrites.isEmpty()) return;
+            batch = pendingWrites;
+            pendingWrites = new LinkedHashMap<>();
+            target = store;
+        }
+        target.batch(() -> {
+            for (PendingWrite w : batch.values()) {
+                switch (w.op) {
+                    case OP_PUT: target.put(w.list, w.item); break;
+                    case OP_REMOVE: target.remove(w.list, w.url); break;
+                    case OP_CLEAR: target.clear(w.list); break;
+                }
+            }
+        });
+        synchronized (this) {
+            maybeCompact();
+        }
+    }
+
+    // Changes still queued may already be in the snapshot; replaying them later is idempotent
+    private void maybeCompact() {
+        if (compactionPending || !store.needsCompaction(history.size() + bookmarks.size())) return;
+        compactionPending = true;
+        final HistoryStore target = store;
+        final List<HistoryItem> historyItems = new ArrayList<>(history.values());
+        final List<HistoryItem> bookmarkItems = new ArrayList<>(bookmarks.values());
+        final long checkpoint = target.checkpoint();
+        ioExecutor.execute(() -> {
+            // A backend switch queued in between has already deleted this store
+            if (target == store) target.compact(historyItems, bookmarkItems, checkpoint);
+            synchronized (HistoryManager.this) {
+                compactionPending = false;
+            }
+        });
     }
 
     private List<HistoryItem> loadList(String key) {
@@ -189,26 +1275,4 @@ public class HistoryManager {
             return new ArrayList<>();
         }
     }
-
-    private void saveList(String key, List<HistoryItem> list) {
-        try {
-            prefs.edit().putString(key, listToJsonArray(list).toString()).apply();
-        } catch (Exception ignored) { }
-    }
-
-    private JSONArray listToJsonArray(List<HistoryItem> list) throws Exception {
-        JSONArray array = new JSONArray();
-        for (HistoryItem item : list) {
-            array.put(item.toJson());
-        }
-        return array;
-    }
-
-    private List<HistoryItem> jsonArrayToList(JSONArray array) throws Exception {
-        List<HistoryItem> list = new ArrayList<>();
-        for (int i = 0; i < array.length(); i++) {
-            list.add(HistoryItem.fromJson(array.getJSONObject(i)));
-        }
-        return list;
-    }
 }
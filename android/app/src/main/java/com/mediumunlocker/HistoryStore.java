@@ -0,0 +1,53 @@
+package com.inulute.mediumunlocker;
+
+import java.util.List;
+
+/**
+ * Persistence backend behind {@link HistoryManager}. The manager keeps the authoritative
+ * in-memory index and forwards each change here; a store only has to persist the changes
+ * and replay them, oldest first, when it is opened.
+ */
+interface HistoryStore {
+
+    int LIST_HISTORY = 0;
+    int LIST_BOOKMARKS = 1;
+
+    interface Replay {
+        void put(int list, HistoryManager.HistoryItem item);
+        void remove(int list, String originalUrl);
+        void clear(int list);
+    }
+
+    boolean exists();
+
+    void open(Replay replay);
+
+    void put(int list, HistoryManager.HistoryItem item);
+
+    void remove(int list, String originalUrl);
+
+    void clear(int list);
+
+    /** Runs a group of writes as one unit where the backend supports it. */
+    void batch(Runnable writes);
+
+    boolean needsCompaction(int liveCount);
+
+    /** Marks the point the live snapshot passed to {@link #compact} corresponds to. */
+    long checkpoint();
+
+    void compact(List<HistoryManager.HistoryItem> history, List<HistoryManager.HistoryItem> bookmarks,
+                 long checkpoint);
+
+    /**
+     * Ranked full-text search over one list. Every word of the query must start a word of the
+     * title or URL, so "script" finds "Script loading" but not "JavaScript". Items whose
+     * title alone matches rank first, newest first within a rank. Returns null when the
+     * backend has no search index and the caller should scan in memory instead.
+     */
+    List<HistoryManager.HistoryItem> search(int list, String query, int offset, int limit);
+
+    void close();
+
+    void delete();
+}
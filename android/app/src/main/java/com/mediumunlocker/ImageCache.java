@@ -0,0 +1,306 @@
+package com.inulute.mediumunlocker;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceResponse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Disk cache for article images that is shared by every mirror. Medium images are addressed
+ * by their CDN image ID (the {@code 1*…} / {@code 0*…} path segment), so the same picture
+ * proxied by freedium, freedium-mirror or an archive.is snapshot of miro.medium.com is
+ * downloaded once. Other images fall back to their full URL. Each file is named by the
+ * fingerprint of that key and starts with a small header (URL, MIME type, pixel width asked
+ * for), followed by the raw body.
+ *
+ * Bounded at {@link #BUDGET_BYTES}; files are evicted least recently served first, using
+ * their modification time as the access stamp.
+ */
+class ImageCache {
+
+    private static final String TAG = "ImageCache";
+    private static final int MAGIC = 0x4D554943; // "MUIC"
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final long BUDGET_BYTES = 64L * 1024 * 1024;
+
+    private static ImageCache instance;
+
+    /** A cached body with its MIME type. */
+    static final class Entry {
+        final String mime;
+        final byte[] body;
+
+        Entry(String mime, byte[] body) {
+            this.mime = mime;
+            this.body = body;
+        }
+    }
+
+    private static final class Header {
+        String url = "";
+        String mime = "image/jpeg";
+        // Width the stored variant was requested at; 0 means full size
+        int width;
+    }
+
+    /** A cache file opened just past its header. */
+    private static final class Hit {
+        final Header header;
+        final DataInputStream in;
+
+        Hit(Header header, DataInputStream in) {
+            this.header = header;
+            this.in = in;
+        }
+    }
+
+    private final File root;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // key fingerprint -> bytes on disk, least recently served first
+    private final LinkedHashMap<Long, Long> sizes = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    private boolean indexLoaded;
+
+    static synchronized ImageCache get(Context context) {
+        if (instance == null) instance = new ImageCache(context.getApplicationContext());
+        return instance;
+    }
+
+    private ImageCache(Context context) {
+        this.root = new File(context.getCacheDir(), "images");
+    }
+
+    // ==================== Keys ====================
+
+    /**
+     * The Medium image ID for CDN URLs, or the URL itself. Cropped ({@code resize:fill})
+     * variants keep their dimensions in the key since they are not the same picture.
+     */
+    static String key(String url) {
+        Uri uri = Uri.parse(url);
+        List<String> segments = uri.getPathSegments();
+        String id = null;
+        String fill = "";
+        for (String segment : segments) {
+            if (isMediumId(segment)) {
+                int dot = segment.indexOf('.');
+                id = dot > 0 ? segment.substring(0, dot) : segment;
+            } else if (segment.startsWith("resize:fill:")) {
+                fill = ":" + segment.substring("resize:fill:".length());
+            }
+        }
+        return id != null ? "medium:" + id + fill : url;
+    }
+
+    /** The pixel width the URL asks the CDN for, or 0 for full size. */
+    static int requestedWidth(String url) {
+        List<String> segments = Uri.parse(url).getPathSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            String digits = null;
+            if (segment.startsWith("resize:fit:")) digits = segment.substring("resize:fit:".length());
+            else if (segment.startsWith("resize:fill:")) digits = segment.substring("resize:fill:".length());
+            else if (segment.equals("max") && i + 1 < segments.size()) digits = segments.get(i + 1);
+            if (digits == null) continue;
+            int end = 0;
+            while (end < digits.length() && Character.isDigit(digits.charAt(end))) end++;
+            if (end == 0 || end > 6) return 0;
+            return Integer.parseInt(digits.substring(0, end));
+        }
+        return 0;
+    }
+
+    static boolean isMediumId(String segment) {
+        if (segment.length() < 4 || segment.charAt(1) != '*') return false;
+        char c = segment.charAt(0);
+        return c >= '0' && c <= '9';
+    }
+
+    // ==================== Serving (WebView IO thread) ====================
+
+    /** The cached image for {@code url} as a response, or null on a miss. */
+    WebResourceResponse open(String url) {
+        Hit hit = openCurrent(fileFor(url), url);
+        return hit != null ? new WebResourceResponse(hit.header.mime, null, hit.in) : null;
+    }
+
+    /** The cached image for {@code url}, or null on a miss. */
+    Entry load(String url) {
+        File file = fileFor(url);
+        Hit hit = openCurrent(file, url);
+        if (hit == null) return null;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buf = new byte[16 * 1024];
+            int n;
+            while ((n = hit.in.read(buf)) > 0) out.write(buf, 0, n);
+            return new Entry(hit.header.mime, out.toByteArray());
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(hit.in);
+        }
+    }
+
+    /**
+     * Opens {@code file} if it holds a variant at least as wide as {@code url} asks for, and
+     * records the access.
+     */
+    private Hit openCurrent(File file, String url) {
+        if (!file.isFile()) return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+            Header header = readHeader(in);
+            int wanted = requestedWidth(url);
+            if (header.width != 0 && (wanted == 0 || wanted > header.width)) {
+                closeQuietly(in);
+                return null;
+            }
+            long fp = UrlFingerprintSet.fingerprint(key(url));
+            executor.execute(() -> touch(fp, file));
+            return new Hit(header, in);
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable cache file " + file, e);
+            closeQuietly(in);
+            file.delete();
+            return null;
+        }
+    }
+
+    // ==================== Storing ====================
+
+    /** Stores an image fetched for {@code url}, replacing any narrower variant. */
+    void put(String url, String mime, byte[] body) {
+        Header header = new Header();
+        header.url = url;
+        header.mime = mime != null && mime.startsWith("image/") ? mime : "image/jpeg";
+        header.width = requestedWidth(url);
+        long fp = UrlFingerprintSet.fingerprint(key(url));
+        executor.execute(() -> {
+            File file = new File(root, Long.toString(fp, Character.MAX_RADIX));
+            try {
+                root.mkdirs();
+                writeFile(file, header, body);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not cache " + url, e);
+                return;
+            }
+            synchronized (this) {
+                loadIndex();
+                Long previous = sizes.put(fp, file.length());
+                totalBytes += file.length() - (previous != null ? previous : 0);
+            }
+            evict(fp);
+        });
+    }
+
+    // ==================== Index & eviction ====================
+
+    private synchronized void loadIndex() {
+        if (indexLoaded) return;
+        indexLoaded = true;
+        File[] files = root.listFiles();
+        if (files == null) return;
+        long[] stamps = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            stamps[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(stamps[a], stamps[b]));
+        for (int i : order) {
+            try {
+                long size = files[i].length();
+                sizes.put(Long.parseLong(files[i].getName(), Character.MAX_RADIX), size);
+                totalBytes += size;
+            } catch (NumberFormatException e) {
+                // Leftover temp file from an interrupted write
+                files[i].delete();
+            }
+        }
+    }
+
+    private void touch(long fp, File file) {
+        file.setLastModified(System.currentTimeMillis());
+        synchronized (this) {
+            loadIndex();
+            sizes.get(fp);
+        }
+    }
+
+    /** Removes least recently served images until under budget, never {@code keep}. */
+    private void evict(long keep) {
+        while (true) {
+            long victim;
+            synchronized (this) {
+                if (totalBytes <= BUDGET_BYTES || sizes.isEmpty()) return;
+                Iterator<Map.Entry<Long, Long>> it = sizes.entrySet().iterator();
+                Map.Entry<Long, Long> eldest = it.next();
+                if (eldest.getKey() == keep) {
+                    if (!it.hasNext()) return;
+                    eldest = it.next();
+                }
+                victim = eldest.getKey();
+                totalBytes -= eldest.getValue();
+                it.remove();
+            }
+            new File(root, Long.toString(victim, Character.MAX_RADIX)).delete();
+        }
+    }
+
+    // ==================== Files ====================
+
+    private File fileFor(String url) {
+        return new File(root, Long.toString(UrlFingerprintSet.fingerprint(key(url)), Character.MAX_RADIX));
+    }
+
+    private static void writeFile(File file, Header header, byte[] body) throws IOException {
+        File tmp = new File(file.getPath() + TMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 8192))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(header.url);
+            out.writeUTF(header.mime);
+            out.writeInt(header.width);
+            out.write(body);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Rename failed for " + file);
+        }
+    }
+
+    private static Header readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a cache file");
+        Header h = new Header();
+        h.url = in.readUTF();
+        h.mime = in.readUTF();
+        h.width = in.readInt();
+        return h;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) return;
+        try {
+            in.close();
+        } catch (IOException ignored) { }
+    }
+}
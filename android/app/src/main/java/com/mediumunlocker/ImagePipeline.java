@@ -0,0 +1,253 @@
+package com.inulute.mediumunlocker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Image stage for {@code shouldInterceptRequest}. Images come from the shared
+ * {@link ImageCache} when possible. Without data saver a miss is left to the WebView, which
+ * loads it with its own cookies, Referer and HTTP cache. With data saver on, images are
+ * fetched once on a small background pool, cached, downscaled to the viewport width and
+ * re-encoded as WebP. The WebView gets a response immediately whose stream blocks until the
+ * pool has the bytes, so its IO threads are not tied up while images download or decode.
+ * Animated GIFs and images that would not get smaller are passed through unchanged.
+ */
+class ImagePipeline {
+
+    private static final String TAG = "ImagePipeline";
+    private static final int POOL_SIZE = 4;
+    // Decoding full-size bitmaps is memory-heavy; the rest of the pool keeps downloading
+    private static final int MAX_CONCURRENT_DECODES = 2;
+    private static final int MAX_IMAGE_BYTES = 15 * 1024 * 1024;
+    private static final int WEBP_QUALITY = 70;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 20000;
+
+    private static ImagePipeline instance;
+
+    /** Bytes fetched versus bytes handed to the WebView, for one article. */
+    static final class Savings {
+        final AtomicLong originalBytes = new AtomicLong();
+        final AtomicLong servedBytes = new AtomicLong();
+
+        long saved() {
+            return originalBytes.get() - servedBytes.get();
+        }
+
+        void reset() {
+            originalBytes.set(0);
+            servedBytes.set(0);
+        }
+    }
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(POOL_SIZE);
+    private final Semaphore decodes = new Semaphore(MAX_CONCURRENT_DECODES);
+    private final ImageCache cache;
+
+    static synchronized ImagePipeline get(Context context) {
+        if (instance == null) instance = new ImagePipeline(ImageCache.get(context));
+        return instance;
+    }
+
+    private ImagePipeline(ImageCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * True for raster images: a known extension or a Medium CDN image ID. SVGs are left to the
+     * WebView since their MIME type cannot be sniffed from the bytes.
+     */
+    static boolean isImageRequest(WebResourceRequest request) {
+        String url = request.getUrl().toString();
+        if (!url.startsWith("http")) return false;
+        String path = request.getUrl().getPath();
+        if (path == null) return false;
+        path = path.toLowerCase(Locale.ROOT);
+        if (path.endsWith(".jpg") || path.endsWith(".jpeg") || path.endsWith(".png")
+                || path.endsWith(".webp") || path.endsWith(".gif")) {
+            return true;
+        }
+        List<String> segments = request.getUrl().getPathSegments();
+        return !segments.isEmpty() && ImageCache.isMediumId(segments.get(segments.size() - 1))
+                && !path.endsWith(".svg");
+    }
+
+    /**
+     * Returns a response for image {@code url}. With {@code maxWidth} of 0 (data saver off)
+     * that is the cached image, or null on a miss so the WebView loads it itself; otherwise a
+     * stream of the pool's downscaled result.
+     */
+    WebResourceResponse serve(String url, int maxWidth, Savings savings) {
+        if (maxWidth <= 0) return cache.open(url);
+        Future<byte[]> result = pool.submit(() -> process(url, maxWidth, savings));
+        // The type is read as soon as this returns, before the pool knows whether it re-encodes;
+        // left unset, Blink sniffs the bytes instead of trusting a type that may be wrong
+        return new WebResourceResponse(null, null, new DeferredStream(result));
+    }
+
+    private byte[] process(String url, int maxWidth, Savings savings) throws IOException, InterruptedException {
+        ImageCache.Entry entry = cache.load(url);
+        if (entry == null) {
+            entry = fetch(url);
+            cache.put(url, entry.mime, entry.body);
+        }
+        byte[] original = entry.body;
+        if (maxWidth <= 0) return original;
+        byte[] out;
+        decodes.acquire();
+        try {
+            out = shrink(original, maxWidth);
+        } finally {
+            decodes.release();
+        }
+        savings.originalBytes.addAndGet(original.length);
+        savings.servedBytes.addAndGet(out.length);
+        return out;
+    }
+
+    /** The image downscaled to {@code maxWidth} as WebP, or {@code original} if that is not smaller. */
+    static byte[] shrink(byte[] original, int maxWidth) {
+        if (isGif(original)) return original;
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(original, 0, original.length, bounds);
+        if (bounds.outWidth <= 0) return original;
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = 1;
+        while (bounds.outWidth / (opts.inSampleSize * 2) >= maxWidth) opts.inSampleSize *= 2;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(original, 0, original.length, opts);
+        if (bitmap == null) return original;
+        try {
+            if (bitmap.getWidth() > maxWidth) {
+                int height = Math.max(1, Math.round(bitmap.getHeight() * (maxWidth / (float) bitmap.getWidth())));
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap, maxWidth, height, true);
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                    bitmap = scaled;
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(original.length / 2);
+            bitmap.compress(webpFormat(), WEBP_QUALITY, out);
+            return out.size() > 0 && out.size() < original.length ? out.toByteArray() : original;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    private static boolean isGif(byte[] data) {
+        return data.length > 3 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F';
+    }
+
+    static ImageCache.Entry fetch(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setInstanceFollowRedirects(true);
+            conn.setRequestProperty("User-Agent", WebViewActivity.USER_AGENT);
+            conn.setRequestProperty("Accept", "image/webp,image/*");
+            int code = conn.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                NetworkWarmup.discard(conn);
+                throw new IOException("HTTP " + code + " for " + url);
+            }
+            try (InputStream in = conn.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(conn.getContentLength(), 16 * 1024));
+                byte[] buf = new byte[16 * 1024];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    if (out.size() + n > MAX_IMAGE_BYTES) throw new IOException("Image too large: " + url);
+                    out.write(buf, 0, n);
+                }
+                return new ImageCache.Entry(mimeOf(conn.getContentType()), out.toByteArray());
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static String mimeOf(String contentType) {
+        if (contentType == null) return null;
+        int semi = contentType.indexOf(';');
+        return (semi < 0 ? contentType : contentType.substring(0, semi)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Blocks on the first read until the pool has produced the body. */
+    private static final class DeferredStream extends InputStream {
+        private final Future<byte[]> future;
+        private byte[] data;
+        private int pos;
+
+        DeferredStream(Future<byte[]> future) {
+            this.future = future;
+        }
+
+        private byte[] data() throws IOException {
+            if (data == null) {
+                try {
+                    data = future.get();
+                } catch (InterruptedException e) {
+                    future.cancel(true);
+                    throw new InterruptedIOException("Interrupted");
+                } catch (ExecutionException e) {
+                    Log.d(TAG, "Image failed: " + e.getCause());
+                    throw new IOException(e.getCause());
+                }
+            }
+            return data;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] d = data();
+            return pos < d.length ? d[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            byte[] d = data();
+            if (pos >= d.length) return -1;
+            int n = Math.min(len, d.length - pos);
+            System.arraycopy(d, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return future.isDone() ? data().length - pos : 0;
+        }
+
+        @Override
+        public void close() {
+            if (data == null) future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.inulute.mediumunlocker;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The last {@link #CAPACITY} article opens, split into spans: intent to activity, activity to
+ * first byte (the main frame committing), first byte to finish, plus the mirror used, how many
+ * mirrors failed over first and where the page came from. Held in parallel primitive arrays
+ * used as a ring buffer, so {@link #record} does not allocate. Persisted as a flat binary file
+ * when the article screen stops, and read by {@link DiagnosticsActivity}.
+ */
+final class LoadTimings {
+
+    private static final String TAG = "LoadTimings";
+    private static final int MAGIC = 0x4D554C54; // "MULT"
+    private static final int VERSION = 1;
+    static final int CAPACITY = 256;
+
+    /** Intent extra: {@code SystemClock.elapsedRealtime()} when the article was requested. */
+    static final String EXTRA_OPENED_AT = "opened_at";
+
+    static final int SOURCE_NETWORK = 0;
+    static final int SOURCE_ARCHIVE = 1;
+    static final int SOURCE_READER = 2;
+    static final String[] SOURCE_LABELS = {"network", "archive", "reader"};
+
+    private static LoadTimings instance;
+
+    /** A copy of the buffer, oldest first; -1 marks an unknown span. */
+    static final class Snapshot {
+        int count;
+        long[] finishedAt;
+        int[] intentToActivity;
+        int[] activityToFirstByte;
+        int[] firstByteToFinish;
+        byte[] mirror;
+        byte[] failovers;
+        byte[] source;
+
+        int total(int i) {
+            if (activityToFirstByte[i] < 0 || firstByteToFinish[i] < 0) return -1;
+            return Math.max(intentToActivity[i], 0) + activityToFirstByte[i] + firstByteToFinish[i];
+        }
+    }
+
+    private final File file;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Guarded by this
+    private final long[] finishedAt = new long[CAPACITY];
+    private final int[] intentToActivity = new int[CAPACITY];
+    private final int[] activityToFirstByte = new int[CAPACITY];
+    private final int[] firstByteToFinish = new int[CAPACITY];
+    private final byte[] mirror = new byte[CAPACITY];
+    private final byte[] failovers = new byte[CAPACITY];
+    private final byte[] source = new byte[CAPACITY];
+    private int next;
+    private int count;
+    private boolean dirty;
+
+    static synchronized LoadTimings get(Context context) {
+        if (instance == null) instance = new LoadTimings(context.getApplicationContext());
+        return instance;
+    }
+
+    private LoadTimings(Context context) {
+        this.file = new File(context.getFilesDir(), "load_timings.bin");
+        load();
+    }
+
+    /** Records one finished load. Spans that were not measured are passed as negative values. */
+    synchronized void record(int mirrorIndex, long intentToActivityMs, long activityToFirstByteMs,
+                             long firstByteToFinishMs, int failoverCount, int loadSource) {
+        int i = next;
+        finishedAt[i] = System.currentTimeMillis();
+        intentToActivity[i] = clamp(intentToActivityMs);
+        activityToFirstByte[i] = clamp(activityToFirstByteMs);
+        firstByteToFinish[i] = clamp(firstByteToFinishMs);
+        mirror[i] = (byte) mirrorIndex;
+        failovers[i] = (byte) Math.min(failoverCount, Byte.MAX_VALUE);
+        source[i] = (byte) loadSource;
+        next = (i + 1) % CAPACITY;
+        if (count < CAPACITY) count++;
+        dirty = true;
+    }
+
+    synchronized Snapshot snapshot() {
+        Snapshot s = new Snapshot();
+        s.count = count;
+        s.finishedAt = new long[count];
+        s.intentToActivity = new int[count];
+        s.activityToFirstByte = new int[count];
+        s.firstByteToFinish = new int[count];
+        s.mirror = new byte[count];
+        s.failovers = new byte[count];
+        s.source = new byte[count];
+        int start = (next - count + CAPACITY) % CAPACITY;
+        for (int k = 0; k < count; k++) {
+            int i = (start + k) % CAPACITY;
+            s.finishedAt[k] = finishedAt[i];
+            s.intentToActivity[k] = intentToActivity[i];
+            s.activityToFirstByte[k] = activityToFirstByte[i];
+            s.firstByteToFinish[k] = firstByteToFinish[i];
+            s.mirror[k] = mirror[i];
+            s.failovers[k] = failovers[i];
+            s.source[k] = source[i];
+        }
+        return s;
+    }
+
+    synchronized void clear() {
+        next = 0;
+        count = 0;
+        dirty = true;
+        save();
+    }
+
+    /** Writes the buffer on a background thread if it changed. */
+    synchronized void save() {
+        if (!dirty) return;
+        dirty = false;
+        Snapshot s = snapshot();
+        executor.execute(() -> write(s));
+    }
+
+    /** Nearest-rank percentile of the non-negative values in {@code values}, or -1 if none. */
+    static int percentile(int[] values, int n, int pct) {
+        int[] known = new int[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (values[i] >= 0) known[m++] = values[i];
+        }
+        if (m == 0) return -1;
+        Arrays.sort(known, 0, m);
+        int rank = (int) Math.ceil(pct / 100.0 * m);
+        return known[Math.max(0, rank - 1)];
+    }
+
+    /** Writes {@code s} as CSV with a header row. */
+    static void writeCsv(Snapshot s, Writer out) throws IOException {
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US);
+        out.write("finished_at,mirror,source,failovers,intent_to_activity_ms,activity_to_first_byte_ms,"
+                + "first_byte_to_finish_ms,total_ms\n");
+        for (int i = 0; i < s.count; i++) {
+            out.write(iso.format(new Date(s.finishedAt[i])));
+            out.write(',');
+            out.write(SettingsActivity.MIRROR_VALUES[s.mirror[i]]);
+            out.write(',');
+            out.write(SOURCE_LABELS[s.source[i]]);
+            out.write(',' + String.valueOf(s.failovers[i]));
+            out.write(',' + csvMs(s.intentToActivity[i]));
+            out.write(',' + csvMs(s.activityToFirstByte[i]));
+            out.write(',' + csvMs(s.firstByteToFinish[i]));
+            out.write(',' + csvMs(s.total(i)));
+            out.write('\n');
+        }
+    }
+
+    private static String csvMs(int ms) {
+        return ms < 0 ? "" : String.valueOf(ms);
+    }
+
+    private static int clamp(long ms) {
+        return ms < 0 ? -1 : (int) Math.min(ms, Integer.MAX_VALUE);
+    }
+
+    // ==================== Persistence ====================
+
+    private void load() {
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Bad header");
+            int n = Math.min(in.readInt(), CAPACITY);
+            for (int i = 0; i < n; i++) {
+                finishedAt[i] = in.readLong();
+                intentToActivity[i] = in.readInt();
+                activityToFirstByte[i] = in.readInt();
+                firstByteToFinish[i] = in.readInt();
+                mirror[i] = in.readByte();
+                failovers[i] = in.readByte();
+                source[i] = in.readByte();
+                if (mirror[i] < 0 || mirror[i] >= SettingsActivity.MIRROR_VALUES.length
+                        || source[i] < 0 || source[i] >= SOURCE_LABELS.length) {
+                    throw new IOException("Bad entry");
+                }
+            }
+            count = n;
+            next = n % CAPACITY;
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable timings", e);
+            count = 0;
+            next = 0;
+            file.delete();
+        }
+    }
+
+    private void write(Snapshot s) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(s.count);
+            for (int i = 0; i < s.count; i++) {
+                out.writeLong(s.finishedAt[i]);
+                out.writeInt(s.intentToActivity[i]);
+                out.writeInt(s.activityToFirstByte[i]);
+                out.writeInt(s.firstByteToFinish[i]);
+                out.writeByte(s.mirror[i]);
+                out.writeByte(s.failovers[i]);
+                out.writeByte(s.source[i]);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save timings", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) tmp.delete();
+    }
+}
@@ -10,7 +10,10 @@ import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.Settings;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
@@ -63,6 +66,8 @@ public class MainActivity extends AppCompatActivity {
     private static final String PREF_LAST_CHECK = "last_update_check";
     private static final long UPDATE_CHECK_INTERVAL = 6 * 60 * 60 * 1000; // 6 hours
 
+    private static final java.util.regex.Pattern URL_PATTERN = java.util.regex.Pattern.compile("(https?://[^\\s]+)");
+
     private TextInputEditText urlInput;
     private MaterialButton unlockButton;
     private MaterialButton aboutButton;
@@ -73,6 +78,7 @@ public class MainActivity extends AppCompatActivity {
     private MaterialButton settingsButton;
     private View deepLinkBanner;
     private MaterialButton deepLinkSettingsButton;
+    private final Runnable historyChanged = this::refreshRecentArticles;
     private LinearLayout recentSection;
     private LinearLayout recentContainer;
     private TextView recentSectionLabel;
@@ -91,6 +97,7 @@ public class MainActivity extends AppCompatActivity {
         executor = Executors.newSingleThreadExecutor();
 
         migrateMirrorPref();
+        PrefetchJobService.schedule(this);
 
         initializeViews();
         setupListeners();
@@ -98,6 +105,9 @@ public class MainActivity extends AppCompatActivity {
 
         // Check for updates in background
         checkForUpdates();
+
+        // After the first frame, so WebView start-up does not delay the home screen
+        getWindow().getDecorView().post(() -> WebViewPool.prewarm(this));
     }
 
     @Override
@@ -105,6 +115,20 @@ public class MainActivity extends AppCompatActivity {
         super.onResume();
         checkAndShowDeepLinkBanner();
         refreshRecentArticles();
+        HistoryManager.getInstance(this).addChangeListener(historyChanged);
+        warmUpNetwork();
+    }
+
+    @Override
+    protected void onPause() {
+        HistoryManager.getInstance(this).removeChangeListener(historyChanged);
+        super.onPause();
+    }
+
+    private void warmUpNetwork() {
+        String mirror = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .getString(SettingsActivity.PREF_MIRROR, SettingsActivity.DEFAULT_MIRROR);
+        NetworkWarmup.get().warmUp(SettingsActivity.getMirrorBaseUrl(mirror));
     }
 
     private void refreshRecentArticles() {
@@ -164,14 +188,7 @@ public class MainActivity extends AppCompatActivity {
 
             updateBookmarkBtn(bookmarkBtn, hm.isBookmarked(item.originalUrl));
             bookmarkBtn.setOnClickListener(v -> {
-                boolean nowBookmarked;
-                if (hm.isBookmarked(item.originalUrl)) {
-                    hm.removeBookmark(item.originalUrl);
-                    nowBookmarked = false;
-                } else {
-                    hm.addBookmark(item.title, item.originalUrl, item.freediumUrl);
-                    nowBookmarked = true;
-                }
+                boolean nowBookmarked = hm.toggleBookmark(item.title, item.originalUrl, item.freediumUrl);
                 updateBookmarkBtn(bookmarkBtn, nowBookmarked);
                 if (tagView != null && "both".equals(feed)) {
                     tagView.setVisibility(nowBookmarked ? View.VISIBLE : View.GONE);
@@ -183,6 +200,7 @@ public class MainActivity extends AppCompatActivity {
                 Intent intent = new Intent(this, WebViewActivity.class);
                 intent.putExtra("url", convertToFreedium(finalItem.originalUrl));
                 intent.putExtra("originalUrl", finalItem.originalUrl);
+                intent.putExtra(LoadTimings.EXTRA_OPENED_AT, SystemClock.elapsedRealtime());
                 startActivity(intent);
             });
 
@@ -248,6 +266,23 @@ public class MainActivity extends AppCompatActivity {
             return false;
         });
 
+        // Warm the connection to the article's mirror while the user is still about to tap Unlock
+        urlInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) { }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                java.util.regex.Matcher matcher = URL_PATTERN.matcher(s);
+                if (matcher.find()) {
+                    NetworkWarmup.get().preconnect(convertToFreedium(UrlCanonicalizer.clean(matcher.group(1))));
+                }
+            }
+        });
+
         deepLinkSettingsButton.setOnClickListener(v -> openDefaultLinksSettings());
 
         TextView seeAllButton = findViewById(R.id.seeAllButton);
@@ -375,6 +410,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void processAndOpenUrl(String mediumUrl) {
+        mediumUrl = UrlCanonicalizer.clean(mediumUrl);
         Log.d(TAG, "Processing Medium URL: " + mediumUrl);
         String freediumUrl = convertToFreedium(mediumUrl);
         Log.d(TAG, "Converted to Freedium URL: " + freediumUrl);
@@ -382,6 +418,7 @@ public class MainActivity extends AppCompatActivity {
         Intent intent = new Intent(this, WebViewActivity.class);
         intent.putExtra("url", freediumUrl);
         intent.putExtra("originalUrl", mediumUrl);
+        intent.putExtra(LoadTimings.EXTRA_OPENED_AT, SystemClock.elapsedRealtime());
         // Pass update info so WebView can show popup on first open (e.g. when opened from share sheet before async check completes)
         String updateVersion = pendingUpdateVersion;
         String updateUrl = pendingUpdateUrl;
@@ -423,15 +460,13 @@ public class MainActivity extends AppCompatActivity {
     private String convertToFreedium(String mediumUrl) {
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
         String mirror = prefs.getString(SettingsActivity.PREF_MIRROR, SettingsActivity.DEFAULT_MIRROR);
-        return SettingsActivity.getMirrorBaseUrl(mirror) + mediumUrl;
+        return MirrorAffinity.get(this).articleUrl(this, mediumUrl, mirror);
     }
 
     private String extractUrl(String text) {
         if (text == null) return null;
 
-        String urlPattern = "(https?://[^\\s]+)";
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(urlPattern);
-        java.util.regex.Matcher matcher = pattern.matcher(text);
+        java.util.regex.Matcher matcher = URL_PATTERN.matcher(text);
 
         if (matcher.find()) {
             return matcher.group(1);
@@ -576,6 +611,7 @@ public class MainActivity extends AppCompatActivity {
                 Log.d(TAG, "Parsed version from shields.io: " + version);
                 return version;
             }
+            NetworkWarmup.discard(connection);
         } catch (Exception e) {
             Log.e(TAG, "Failed to fetch from shields.io", e);
         } finally {
@@ -615,6 +651,7 @@ public class MainActivity extends AppCompatActivity {
                 Log.d(TAG, "Parsed version from GitHub: " + tagName);
                 return tagName;
             }
+            NetworkWarmup.discard(connection);
         } catch (Exception e) {
             Log.e(TAG, "Failed to fetch from GitHub API", e);
         } finally {
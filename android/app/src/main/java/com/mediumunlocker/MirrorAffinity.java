@@ -0,0 +1,86 @@
+package com.inulute.mediumunlocker;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers which mirror last served each article, so reopening it skips the failover chain.
+ * Keyed by the fingerprint of the article's identity key and capped at {@link #MAX_ENTRIES}
+ * with least-recently-used eviction. Persisted in LRU order as a single prefs string of
+ * {@code fingerprint:mirror} pairs, rewritten only when a mapping changes.
+ */
+class MirrorAffinity {
+
+    private static final String PREFS_NAME = "MirrorAffinity";
+    private static final String KEY_ENTRIES = "entries";
+    static final int MAX_ENTRIES = 300;
+
+    private static MirrorAffinity instance;
+
+    private final SharedPreferences prefs;
+    private final LinkedHashMap<Long, Integer> entries = new LinkedHashMap<Long, Integer>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    static synchronized MirrorAffinity get(Context context) {
+        if (instance == null) instance = new MirrorAffinity(context.getApplicationContext());
+        return instance;
+    }
+
+    private MirrorAffinity(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        load();
+    }
+
+    /**
+     * Mirror URL to open {@code originalUrl} with: the mirror that last served it if that one
+     * is not in cool-down, otherwise the user's default mirror.
+     */
+    String articleUrl(Context context, String originalUrl, String defaultMirror) {
+        int mirror = SettingsActivity.mirrorIndex(defaultMirror);
+        Integer known;
+        synchronized (this) {
+            known = entries.get(fingerprint(originalUrl));
+        }
+        if (known != null && MirrorHealth.get(context).isAvailable(known)) mirror = known;
+        return SettingsActivity.MIRROR_BASES[mirror] + originalUrl;
+    }
+
+    synchronized void record(String originalUrl, int mirror) {
+        Integer previous = entries.put(fingerprint(originalUrl), mirror);
+        if (previous == null || previous != mirror) save();
+    }
+
+    private static long fingerprint(String url) {
+        return UrlCanonicalizer.keyFingerprint(url);
+    }
+
+    private void load() {
+        String raw = prefs.getString(KEY_ENTRIES, "");
+        if (raw.isEmpty()) return;
+        for (String pair : raw.split(",")) {
+            int colon = pair.indexOf(':');
+            if (colon <= 0) continue;
+            try {
+                int mirror = Integer.parseInt(pair.substring(colon + 1));
+                if (mirror < 0 || mirror >= SettingsActivity.MIRROR_BASES.length) continue;
+                entries.put(Long.parseLong(pair.substring(0, colon), 36), mirror);
+            } catch (NumberFormatException ignored) { }
+        }
+    }
+
+    private void save() {
+        StringBuilder sb = new StringBuilder(entries.size() * 16);
+        for (Map.Entry<Long, Integer> e : entries.entrySet()) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(Long.toString(e.getKey(), 36)).append(':').append(e.getValue());
+        }
+        prefs.edit().putString(KEY_ENTRIES, sb.toString()).apply();
+    }
+}
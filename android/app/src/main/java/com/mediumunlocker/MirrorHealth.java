@@ -0,0 +1,148 @@
+package com.inulute.mediumunlocker;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Per-mirror health from real loads: an EWMA of the success rate and of time-to-article,
+ * persisted across launches. A mirror that fails {@link #TRIP_FAILURES} times in a row is
+ * skipped for a cool-down that doubles on every trip (up to {@link #MAX_COOLDOWN_MS}); once
+ * the cool-down passes it is tried again and a single success closes the breaker.
+ *
+ * Mirror indices follow {@link SettingsActivity#MIRROR_VALUES}.
+ */
+class MirrorHealth {
+
+    private static final String PREFS_NAME = "MirrorHealth";
+    private static final double RATE_ALPHA = 0.2;
+    private static final double LATENCY_ALPHA = 0.3;
+    private static final int TRIP_FAILURES = 3;
+    private static final long BASE_COOLDOWN_MS = 5 * 60 * 1000;
+    private static final long MAX_COOLDOWN_MS = 60 * 60 * 1000;
+
+    private static MirrorHealth instance;
+
+    private static final class Stats {
+        double successRate = 1.0;
+        double latencyMs = 0; // 0 until the first success
+        int consecutiveFailures;
+        int trips;
+        long openUntil;
+        int samples;
+    }
+
+    private final SharedPreferences prefs;
+    private final Stats[] stats;
+
+    static synchronized MirrorHealth get(Context context) {
+        if (instance == null) instance = new MirrorHealth(context.getApplicationContext());
+        return instance;
+    }
+
+    private MirrorHealth(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        stats = new Stats[SettingsActivity.MIRROR_VALUES.length];
+        for (int i = 0; i < stats.length; i++) stats[i] = load(i);
+    }
+
+    synchronized void recordSuccess(int mirror, long latencyMs) {
+        Stats s = stats[mirror];
+        s.successRate += RATE_ALPHA * (1.0 - s.successRate);
+        s.latencyMs = s.latencyMs == 0 ? latencyMs : s.latencyMs + LATENCY_ALPHA * (latencyMs - s.latencyMs);
+        s.consecutiveFailures = 0;
+        s.trips = 0;
+        s.openUntil = 0;
+        s.samples++;
+        save(mirror);
+    }
+
+    synchronized void recordFailure(int mirror) {
+        Stats s = stats[mirror];
+        s.successRate -= RATE_ALPHA * s.successRate;
+        s.samples++;
+        if (++s.consecutiveFailures >= TRIP_FAILURES) {
+            long cooldown = Math.min(MAX_COOLDOWN_MS, BASE_COOLDOWN_MS << Math.min(s.trips, 4));
+            s.openUntil = System.currentTimeMillis() + cooldown;
+            s.trips++;
+        }
+        save(mirror);
+    }
+
+    /** False while the mirror's breaker is open. */
+    synchronized boolean isAvailable(int mirror) {
+        return stats[mirror].openUntil <= System.currentTimeMillis();
+    }
+
+    /**
+     * Failover order: {@code preferred} first if available, then the other available mirrors
+     * by score, then the ones in cool-down (soonest to reopen first) as a last resort.
+     */
+    synchronized int[] failoverOrder(int preferred) {
+        long now = System.currentTimeMillis();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < stats.length; i++) order.add(i);
+        Collections.sort(order, (a, b) -> {
+            boolean openA = stats[a].openUntil > now;
+            boolean openB = stats[b].openUntil > now;
+            if (openA != openB) return openA ? 1 : -1;
+            if (openA) return Long.compare(stats[a].openUntil, stats[b].openUntil);
+            if ((a == preferred) != (b == preferred)) return a == preferred ? -1 : 1;
+            return Double.compare(score(b), score(a));
+        });
+        int[] result = new int[order.size()];
+        for (int i = 0; i < result.length; i++) result[i] = order.get(i);
+        return result;
+    }
+
+    /** Short status for the mirror picker, e.g. "98% · 640 ms". */
+    synchronized String describe(int mirror) {
+        Stats s = stats[mirror];
+        if (s.samples == 0) return "No data yet";
+        long now = System.currentTimeMillis();
+        if (s.openUntil > now) {
+            long minutes = Math.max(1, (s.openUntil - now) / 60_000);
+            return "Paused for " + minutes + " min after failures";
+        }
+        String rate = Math.round(s.successRate * 100) + "%";
+        return s.latencyMs > 0
+                ? String.format(Locale.US, "%s · %d ms", rate, Math.round(s.latencyMs))
+                : rate;
+    }
+
+    // Success rate dominates; latency breaks ties between similarly reliable mirrors
+    private double score(int mirror) {
+        Stats s = stats[mirror];
+        double latency = s.latencyMs > 0 ? s.latencyMs : 2000;
+        return s.successRate / (1.0 + latency / 5000.0);
+    }
+
+    private Stats load(int mirror) {
+        Stats s = new Stats();
+        String raw = prefs.getString(SettingsActivity.MIRROR_VALUES[mirror], null);
+        if (raw == null) return s;
+        try {
+            String[] parts = raw.split(",");
+            s.successRate = Double.parseDouble(parts[0]);
+            s.latencyMs = Double.parseDouble(parts[1]);
+            s.consecutiveFailures = Integer.parseInt(parts[2]);
+            s.trips = Integer.parseInt(parts[3]);
+            s.openUntil = Long.parseLong(parts[4]);
+            s.samples = Integer.parseInt(parts[5]);
+        } catch (RuntimeException e) {
+            return new Stats();
+        }
+        return s;
+    }
+
+    private void save(int mirror) {
+        Stats s = stats[mirror];
+        prefs.edit().putString(SettingsActivity.MIRROR_VALUES[mirror], String.format(Locale.US,
+                "%.4f,%.1f,%d,%d,%d,%d", s.successRate, s.latencyMs, s.consecutiveFailures,
+                s.trips, s.openUntil, s.samples)).apply();
+    }
+}
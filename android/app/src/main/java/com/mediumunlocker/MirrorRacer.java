@@ -0,0 +1,165 @@
+package com.inulute.mediumunlocker;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Probes several mirrors for the same article at once and reports the first one that serves a
+ * real article page. Each probe fetches only the head of the page, enough to read its title;
+ * the losers are disconnected as soon as there is a winner.
+ */
+class MirrorRacer {
+
+    private static final String TAG = "MirrorRacer";
+    private static final int CONNECT_TIMEOUT_MS = 6000;
+    private static final int READ_TIMEOUT_MS = 8000;
+    private static final int SNIFF_BYTES = 32 * 1024;
+
+    interface Listener {
+        /** Called on the main thread with the winning mirror's index and full URL. */
+        void onWinner(int mirrorIndex, String url);
+
+        /** Called on the main thread when every probe failed. */
+        void onAllFailed();
+    }
+
+    private final String originalUrl;
+    private final String[] bases;
+    private final int[] candidates;
+    private final String userAgent;
+    private final MirrorHealth health;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<HttpURLConnection> connections = new ArrayList<>();
+    private ExecutorService executor;
+    private int failures;
+    private boolean finished;
+
+    MirrorRacer(String originalUrl, String[] bases, int[] candidates, String userAgent,
+                MirrorHealth health, Listener listener) {
+        this.originalUrl = originalUrl;
+        this.bases = bases;
+        this.candidates = candidates;
+        this.userAgent = userAgent;
+        this.health = health;
+        this.listener = listener;
+    }
+
+    void start() {
+        executor = Executors.newFixedThreadPool(candidates.length);
+        for (int index : candidates) {
+            executor.execute(() -> probe(index));
+        }
+        executor.shutdown();
+    }
+
+    /** Stops all probes; no callback is delivered afterwards. */
+    void cancel() {
+        List<HttpURLConnection> open;
+        synchronized (this) {
+            finished = true;
+            open = new ArrayList<>(connections);
+            connections.clear();
+        }
+        for (HttpURLConnection c : open) c.disconnect();
+        if (executor != null) executor.shutdownNow();
+    }
+
+    private void probe(int index) {
+        String url = bases[index] + originalUrl;
+        HttpURLConnection conn = null;
+        boolean ok = false;
+        try {
+            conn = (HttpURLConnection) new URL(url).openConnection();
+            synchronized (this) {
+                if (finished) return;
+                connections.add(conn);
+            }
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setInstanceFollowRedirects(true);
+            conn.setRequestProperty("User-Agent", userAgent);
+            conn.setRequestProperty("Accept", "text/html");
+            int code = conn.getResponseCode();
+            ok = code >= 200 && code < 300 && looksLikeArticle(readHead(conn));
+        } catch (Exception e) {
+            Log.d(TAG, "Probe failed for " + bases[index] + ": " + e.getMessage());
+        } finally {
+            if (conn != null) conn.disconnect();
+        }
+        finish(index, url, ok);
+    }
+
+    private void finish(int index, String url, boolean ok) {
+        List<HttpURLConnection> losers = null;
+        boolean allFailed = false;
+        synchronized (this) {
+            if (finished) return;
+            // Losers are cut off once there is a winner, so only failures before that count.
+            // The winner's success is recorded by the real load that follows.
+            if (!ok) health.recordFailure(index);
+            if (ok) {
+                finished = true;
+                losers = new ArrayList<>(connections);
+                connections.clear();
+            } else if (++failures == candidates.length) {
+                finished = true;
+                allFailed = true;
+            }
+        }
+        if (losers != null) {
+            for (HttpURLConnection c : losers) c.disconnect();
+            mainHandler.post(() -> listener.onWinner(index, url));
+        } else if (allFailed) {
+            mainHandler.post(listener::onAllFailed);
+        }
+    }
+
+    private static String readHead(HttpURLConnection conn) throws Exception {
+        byte[] buf = new byte[SNIFF_BYTES];
+        int n = 0;
+        try (InputStream in = conn.getInputStream()) {
+            int r;
+            while (n < buf.length && (r = in.read(buf, n, buf.length - n)) > 0) {
+                int from = Math.max(0, n - 8);
+                n += r;
+                if (indexOfTitleEnd(buf, from, n) >= 0) break;
+            }
+        }
+        return new String(buf, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOfTitleEnd(byte[] buf, int from, int n) {
+        outer:
+        for (int i = from; i + 8 <= n; i++) {
+            for (int j = 0; j < 8; j++) {
+                if (Character.toLowerCase((char) buf[i + j]) != "</title>".charAt(j)) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    static boolean looksLikeArticle(String html) {
+        String lower = html.toLowerCase(Locale.ROOT);
+        int start = lower.indexOf("<title");
+        if (start < 0) return false;
+        start = lower.indexOf('>', start) + 1;
+        int end = lower.indexOf("</title>", start);
+        if (start <= 0 || end < 0) return false;
+        String title = html.substring(start, end).trim();
+        return !title.startsWith("http") && !WebViewActivity.isErrorTitle(title)
+                && !title.toLowerCase(Locale.ROOT).contains("just a moment");
+    }
+}
@@ -0,0 +1,149 @@
+package com.inulute.mediumunlocker;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pays DNS, TCP and TLS set-up to the mirrors before an article is opened. Lookups go through
+ * the system resolver, whose cache the WebView shares. Connections are opened twice: once from
+ * the app's own HTTP stack, so the racer, reader and archive reuse a keep-alive socket, and
+ * once through {@link WebViewPool}, so Chromium holds a warm socket for the page itself.
+ *
+ * Each preconnect is timed. A repeat within the keep-alive window logs the warm cost next to
+ * the cold one, which shows how much set-up time is saved.
+ */
+final class NetworkWarmup {
+
+    private static final String TAG = "NetworkWarmup";
+    // Android's resolver caches answers for their TTL; no need to ask more often than this
+    private static final long DNS_INTERVAL_MS = 5 * 60 * 1000;
+    // Chromium drops unused preconnected sockets after about 10 s, so do not repeat sooner
+    private static final long PRECONNECT_INTERVAL_MS = 10 * 1000;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 10000;
+    // Bodies up to this size are read off so the socket can go back to the pool
+    private static final int DISCARD_LIMIT = 64 * 1024;
+    private static final String IMAGE_ORIGIN = "https://miro.medium.com/";
+
+    private static NetworkWarmup instance;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Main thread only
+    private long lastDnsAt;
+    private final Map<String, Long> lastPreconnectAt = new HashMap<>();
+    // Executor thread only: first (cold) preconnect time per host
+    private final Map<String, Long> coldConnectMs = new HashMap<>();
+
+    static synchronized NetworkWarmup get() {
+        if (instance == null) instance = new NetworkWarmup();
+        return instance;
+    }
+
+    private NetworkWarmup() { }
+
+    /** Resolves every mirror host and warms connections to {@code pageUrl}'s host. Main thread only. */
+    void warmUp(String pageUrl) {
+        long now = SystemClock.elapsedRealtime();
+        if (lastDnsAt == 0 || now - lastDnsAt > DNS_INTERVAL_MS) {
+            lastDnsAt = now;
+            Set<String> hosts = new LinkedHashSet<>();
+            for (String base : SettingsActivity.MIRROR_BASES) hosts.add(Uri.parse(base).getHost());
+            hosts.add(Uri.parse(IMAGE_ORIGIN).getHost());
+            executor.execute(() -> {
+                for (String host : hosts) resolve(host);
+            });
+        }
+        preconnect(pageUrl);
+    }
+
+    /** Opens warm connections to the origin of {@code pageUrl} and the image CDN. Main thread only. */
+    void preconnect(String pageUrl) {
+        Uri uri = Uri.parse(pageUrl);
+        String host = uri.getHost();
+        if (host == null || uri.getScheme() == null) return;
+        long now = SystemClock.elapsedRealtime();
+        Long last = lastPreconnectAt.get(host);
+        if (last != null && now - last < PRECONNECT_INTERVAL_MS) return;
+        lastPreconnectAt.put(host, now);
+
+        String origin = uri.getScheme() + "://" + host + "/";
+        WebViewPool.preconnect(origin, IMAGE_ORIGIN);
+        executor.execute(() -> connect(origin, host));
+    }
+
+    private static void resolve(String host) {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            InetAddress.getAllByName(host);
+            Log.d(TAG, "DNS " + host + ": " + (SystemClock.elapsedRealtime() - start) + " ms");
+        } catch (IOException e) {
+            Log.d(TAG, "DNS failed for " + host + ": " + e.getMessage());
+        }
+    }
+
+    private void connect(String origin, String host) {
+        long start = SystemClock.elapsedRealtime();
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(origin).openConnection();
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setInstanceFollowRedirects(false);
+            conn.setRequestMethod("HEAD");
+            conn.setRequestProperty("User-Agent", WebViewActivity.USER_AGENT);
+            conn.getResponseCode();
+            discard(conn);
+            long ms = SystemClock.elapsedRealtime() - start;
+            Long cold = coldConnectMs.get(host);
+            if (cold == null) {
+                coldConnectMs.put(host, ms);
+                Log.i(TAG, "Preconnect " + host + ": " + ms + " ms (cold)");
+            } else {
+                Log.i(TAG, "Preconnect " + host + ": " + ms + " ms (cold was " + cold + " ms, ~"
+                        + Math.max(0, cold - ms) + " ms saved by keep-alive)");
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "Preconnect failed for " + host + ": " + e.getMessage());
+        } finally {
+            // On Android this hands a fully read connection back to the pool rather than closing it
+            if (conn != null) conn.disconnect();
+        }
+    }
+
+    /**
+     * Reads off and closes a response body the caller does not want, so the connection can
+     * be reused. Call only after {@code getResponseCode()} succeeded; large bodies are left
+     * for {@code disconnect()} to cut off.
+     */
+    static void discard(HttpURLConnection conn) {
+        InputStream in = null;
+        try {
+            in = conn.getResponseCode() >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            if (in == null) return;
+            byte[] buf = new byte[8192];
+            int total = 0;
+            int n;
+            while (total <= DISCARD_LIMIT && (n = in.read(buf)) > 0) total += n;
+        } catch (IOException ignored) {
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) { }
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.inulute.mediumunlocker;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Reading positions keyed by the fingerprint of the article's identity key, capped at
+ * {@link #MAX_ENTRIES} with least-recently-used eviction. Persisted as a flat binary file of
+ * 14-byte entries (fingerprint, scroll pixels, scroll fraction) in LRU order, rewritten via
+ * temp file + rename on a background executor.
+ */
+class PositionStore {
+
+    private static final String TAG = "PositionStore";
+    private static final int MAGIC = 0x4D555053; // "MUPS"
+    private static final int VERSION = 1;
+    static final int MAX_ENTRIES = 500;
+    private static final int FRACTION_SCALE = 10000;
+
+    static final class Position {
+        final int scrollY;
+        // Scroll offset as a fraction of document height, or -1 when unknown
+        final float fraction;
+
+        Position(int scrollY, float fraction) {
+            this.scrollY = scrollY;
+            this.fraction = fraction;
+        }
+    }
+
+    private final File file;
+    private final File tmpFile;
+    private final Executor executor;
+    private final LinkedHashMap<Long, Position> entries = new LinkedHashMap<Long, Position>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Position> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private boolean writeScheduled = false;
+
+    PositionStore(File dir, Executor executor) {
+        this.file = new File(dir, "positions.bin");
+        this.tmpFile = new File(dir, "positions.bin.tmp");
+        this.executor = executor;
+        load();
+    }
+
+    synchronized void put(String url, int scrollY, float fraction) {
+        entries.put(UrlFingerprintSet.fingerprint(url), new Position(scrollY, fraction));
+        scheduleWrite();
+    }
+
+    synchronized Position get(String url) {
+        return entries.get(UrlFingerprintSet.fingerprint(url));
+    }
+
+    /** Moves a position saved under {@code from} to {@code to} unless one exists there already. */
+    synchronized void rekey(String from, String to) {
+        long fromFp = UrlFingerprintSet.fingerprint(from);
+        long toFp = UrlFingerprintSet.fingerprint(to);
+        if (fromFp == toFp) return;
+        Position p = entries.remove(fromFp);
+        if (p == null) return;
+        if (!entries.containsKey(toFp)) entries.put(toFp, p);
+        scheduleWrite();
+    }
+
+    synchronized void remove(String url) {
+        if (entries.remove(UrlFingerprintSet.fingerprint(url)) != null) scheduleWrite();
+    }
+
+    /** Drops every position whose article is no longer in history or bookmarks. */
+    synchronized void retainAll(UrlFingerprintSet live) {
+        boolean changed = false;
+        for (Iterator<Long> it = entries.keySet().iterator(); it.hasNext(); ) {
+            if (!live.contains(it.next())) {
+                it.remove();
+                changed = true;
+            }
+        }
+        if (changed) scheduleWrite();
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        scheduleWrite();
+    }
+
+    /** Writes the file now on the calling thread, which must be the store's executor. */
+    void writeNow() {
+        write();
+    }
+
+    private void scheduleWrite() {
+        if (writeScheduled) return;
+        writeScheduled = true;
+        executor.execute(this::write);
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Bad header");
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long fp = in.readLong();
+                int scrollY = in.readInt();
+                int fraction = in.readUnsignedShort();
+                entries.put(fp, new Position(scrollY,
+                        fraction > FRACTION_SCALE ? -1f : fraction / (float) FRACTION_SCALE));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read reading positions", e);
+        }
+    }
+
+    private void write() {
+        long[] fps;
+        int[] ys;
+        float[] fractions;
+        synchronized (this) {
+            writeScheduled = false;
+            int n = entries.size();
+            fps = new long[n];
+            ys = new int[n];
+            fractions = new float[n];
+            int i = 0;
+            for (Map.Entry<Long, Position> e : entries.entrySet()) {
+                fps[i] = e.getKey();
+                ys[i] = e.getValue().scrollY;
+                fractions[i] = e.getValue().fraction;
+                i++;
+            }
+        }
+        try {
+            FileOutputStream fos = new FileOutputStream(tmpFile);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(fps.length);
+                for (int i = 0; i < fps.length; i++) {
+                    out.writeLong(fps[i]);
+                    out.writeInt(ys[i]);
+                    out.writeShort(fractions[i] < 0 ? 0xFFFF
+                            : Math.min(FRACTION_SCALE, Math.round(fractions[i] * FRACTION_SCALE)));
+                }
+                out.flush();
+                fos.getFD().sync();
+            }
+            if (!tmpFile.renameTo(file)) throw new IOException("Rename failed");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write reading positions", e);
+            tmpFile.delete();
+        }
+    }
+}
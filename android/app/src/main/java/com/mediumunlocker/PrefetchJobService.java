@@ -0,0 +1,156 @@
+package com.inulute.mediumunlocker;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads bookmarks (and optionally the most recent history items) that are not in the
+ * {@link ArticleArchive} yet, so opening them later needs no network. Runs only on an
+ * unmetered network while charging, with a few downloads in flight at once; article requests
+ * to the same mirror host start at least {@link #HOST_DELAY_MS} apart.
+ */
+public class PrefetchJobService extends JobService {
+
+    private static final String TAG = "PrefetchJob";
+    private static final int JOB_ID = 1017;
+    private static final long PERIOD_MS = 6 * 60 * 60 * 1000;
+    private static final int MAX_CONCURRENT = 3;
+    private static final int MAX_ARTICLES_PER_RUN = 50;
+    private static final long HOST_DELAY_MS = 2000;
+
+    static final int[] RECENT_OPTIONS = {0, 5, 10, 25};
+
+    private volatile ExecutorService executor;
+    private volatile boolean stopped;
+    // host -> earliest time the next request may start; guarded by itself
+    private final Map<String, Long> hostNextSlot = new HashMap<>();
+
+    /** Schedules or cancels the periodic job to match the current settings. */
+    static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) return;
+        SharedPreferences prefs = context.getSharedPreferences("MediumUnlockerPrefs", MODE_PRIVATE);
+        boolean wanted = ArticleArchive.get(context).isEnabled()
+                && (prefs.getBoolean(SettingsActivity.PREF_PREFETCH_BOOKMARKS, true)
+                    || prefs.getInt(SettingsActivity.PREF_PREFETCH_RECENT, 0) > 0);
+        if (!wanted) {
+            scheduler.cancel(JOB_ID);
+            return;
+        }
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) return;
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, PrefetchJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(PERIOD_MS)
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        ArticleArchive archive = ArticleArchive.get(this);
+        if (!archive.isEnabled()) return false;
+        HistoryManager.getInstance(this);
+        stopped = false;
+        new Thread(() -> {
+            // Checking the archive touches disk, so the work list is built off the main thread
+            List<HistoryManager.HistoryItem> items = pendingItems(archive);
+            ExecutorService pool = Executors.newFixedThreadPool(MAX_CONCURRENT);
+            executor = pool;
+            try {
+                for (HistoryManager.HistoryItem item : items) {
+                    if (stopped) break;
+                    pool.execute(() -> prefetch(archive, item));
+                }
+            } catch (RejectedExecutionException e) {
+                // onStopJob shut the pool down underneath us
+            }
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.HOURS);
+            } catch (InterruptedException ignored) { }
+            if (!stopped) jobFinished(params, false);
+        }, TAG).start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Constraints lost (unplugged or off Wi-Fi): drop what is left, retry next window
+        stopped = true;
+        if (executor != null) executor.shutdownNow();
+        return true;
+    }
+
+    private List<HistoryManager.HistoryItem> pendingItems(ArticleArchive archive) {
+        SharedPreferences prefs = getSharedPreferences("MediumUnlockerPrefs", MODE_PRIVATE);
+        HistoryManager hm = HistoryManager.getInstance(this);
+        // Keyed by identity so an article that is both bookmarked and recent is fetched once
+        LinkedHashMap<String, HistoryManager.HistoryItem> wanted = new LinkedHashMap<>();
+        if (prefs.getBoolean(SettingsActivity.PREF_PREFETCH_BOOKMARKS, true)) {
+            for (HistoryManager.HistoryItem item : hm.getBookmarks()) wanted.put(item.key, item);
+        }
+        List<HistoryManager.HistoryItem> history = hm.getHistory();
+        int recent = Math.min(prefs.getInt(SettingsActivity.PREF_PREFETCH_RECENT, 0), history.size());
+        for (int i = 0; i < recent; i++) {
+            HistoryManager.HistoryItem item = history.get(i);
+            if (!wanted.containsKey(item.key)) wanted.put(item.key, item);
+        }
+        List<HistoryManager.HistoryItem> pending = new ArrayList<>();
+        for (HistoryManager.HistoryItem item : wanted.values()) {
+            if (pending.size() == MAX_ARTICLES_PER_RUN) break;
+            if (!item.originalUrl.isEmpty() && !archive.contains(item.originalUrl)) pending.add(item);
+        }
+        return pending;
+    }
+
+    private void prefetch(ArticleArchive archive, HistoryManager.HistoryItem item) {
+        SharedPreferences prefs = getSharedPreferences("MediumUnlockerPrefs", MODE_PRIVATE);
+        String mirror = prefs.getString(SettingsActivity.PREF_MIRROR, SettingsActivity.DEFAULT_MIRROR);
+        String pageUrl = MirrorAffinity.get(this).articleUrl(this, item.originalUrl, mirror);
+        String host = Uri.parse(pageUrl).getHost();
+        try {
+            waitForHost(host);
+            if (stopped) return;
+            if (archive.download(item.originalUrl, pageUrl)) {
+                Log.d(TAG, "Prefetched " + item.originalUrl);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.d(TAG, "Prefetch failed for " + item.originalUrl + ": " + e.getMessage());
+        }
+    }
+
+    /** Reserves the host's next request slot and sleeps until it starts. */
+    private void waitForHost(String host) throws InterruptedException {
+        long start;
+        synchronized (hostNextSlot) {
+            Long next = hostNextSlot.get(host);
+            start = Math.max(System.currentTimeMillis(), next != null ? next : 0);
+            hostNextSlot.put(host, start + HOST_DELAY_MS);
+        }
+        long wait = start - System.currentTimeMillis();
+        if (wait > 0) Thread.sleep(wait);
+    }
+}
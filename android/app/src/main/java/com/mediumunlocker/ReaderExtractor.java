@@ -0,0 +1,513 @@
+package com.inulute.mediumunlocker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pulls the readable article out of a mirror page in one streaming pass: title, author,
+ * and the body reduced to a small whitelist of text, list, quote, code, link and image
+ * elements. Scripts, styles and page chrome are skipped without being buffered. If the page
+ * has an {@code <article>} (or {@code <main>}) element its content wins, otherwise the whole
+ * body is used.
+ */
+final class ReaderExtractor {
+
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    // An <article> shorter than this is probably a teaser card, not the post
+    private static final int MIN_ARTICLE_TEXT = 500;
+
+    private static final Set<String> KEEP = set("p", "h1", "h2", "h3", "h4", "blockquote", "pre", "code",
+            "ul", "ol", "li", "figure", "figcaption", "a", "em", "strong", "b", "i", "br", "hr", "img");
+    private static final Set<String> SKIP = set("script", "style", "noscript", "svg", "nav", "header", "footer",
+            "form", "button", "iframe", "aside", "select", "template");
+    private static final Set<String> VOID = set("br", "hr", "img", "meta", "link", "input", "source", "wbr");
+    private static final Set<String> RAW_TEXT = set("script", "style");
+
+    static final class Article {
+        String title = "";
+        String author = "";
+        String bodyHtml = "";
+        int imageCount;
+        int textLength;
+    }
+
+    private ReaderExtractor() { }
+
+    /** Fetches {@code pageUrl} and extracts it while the response streams in. */
+    static Article fetch(String pageUrl) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(pageUrl).openConnection();
+        try {
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setInstanceFollowRedirects(true);
+            conn.setRequestProperty("User-Agent", WebViewActivity.USER_AGENT);
+            conn.setRequestProperty("Accept", "text/html");
+            int code = conn.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                NetworkWarmup.discard(conn);
+                throw new IOException("HTTP " + code);
+            }
+            try (InputStream in = conn.getInputStream()) {
+                return extract(in, charsetOf(conn.getContentType()), conn.getURL().toString());
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    static Article extract(InputStream in, Charset charset, String pageUrl) throws IOException {
+        return new Parser(new BufferedReader(new InputStreamReader(in, charset), 16 * 1024), pageUrl).run();
+    }
+
+    private static Charset charsetOf(String contentType) {
+        if (contentType != null) {
+            int cs = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+            if (cs >= 0) {
+                try {
+                    return Charset.forName(contentType.substring(cs + 8).replace("\"", "").trim());
+                } catch (RuntimeException ignored) { }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static final class Parser {
+        private final Reader in;
+        private URL base;
+        private final Article article = new Article();
+        private final StringBuilder body = new StringBuilder(32 * 1024);
+        private final StringBuilder main = new StringBuilder(32 * 1024);
+        private final StringBuilder tag = new StringBuilder(256);
+        private final ArrayDeque<String> skipping = new ArrayDeque<>();
+        private String metaTitle = "";
+        private final StringBuilder docTitle = new StringBuilder();
+        private boolean inTitle;
+        private boolean inBody;
+        // Nesting depth inside the first <article>/<main>; -1 before it, -2 after it closed
+        private int mainDepth = -1;
+        private String mainTag;
+        private boolean inHeading;
+        private boolean seenParagraph;
+        private int bodyText;
+        private int mainText;
+        private int mainImages;
+        private int bodyImages;
+        private String headingTitle = "";
+
+        Parser(Reader in, String pageUrl) {
+            this.in = in;
+            try {
+                base = new URL(pageUrl);
+            } catch (IOException e) {
+                base = null;
+            }
+        }
+
+        Article run() throws IOException {
+            int c;
+            StringBuilder text = new StringBuilder();
+            while ((c = read()) != -1) {
+                if (c == '<') {
+                    flushText(text);
+                    readTag();
+                } else {
+                    text.append((char) c);
+                }
+            }
+            flushText(text);
+
+            boolean useMain = mainText >= MIN_ARTICLE_TEXT;
+            article.bodyHtml = (useMain ? main : body).toString();
+            article.textLength = useMain ? mainText : bodyText;
+            article.imageCount = useMain ? mainImages : bodyImages;
+            article.title = !metaTitle.isEmpty() ? metaTitle
+                    : !headingTitle.isEmpty() ? headingTitle : docTitle.toString().trim();
+            return article;
+        }
+
+        private int read() throws IOException {
+            return in.read();
+        }
+
+        private void flushText(StringBuilder text) {
+            if (text.length() == 0) return;
+            String decoded = decodeEntities(text.toString());
+            text.setLength(0);
+            if (inTitle) {
+                docTitle.append(decoded);
+                return;
+            }
+            if (!inBody || !skipping.isEmpty()) return;
+            String trimmed = decoded.trim();
+            if (trimmed.isEmpty()) {
+                if (decoded.length() > 0) emit(" ");
+                return;
+            }
+            if (inHeading) {
+                headingTitle += trimmed;
+                return;
+            }
+            emit(escape(decoded.replaceAll("\\s+", " ")));
+            bodyText += trimmed.length();
+            if (mainDepth > 0) mainText += trimmed.length();
+        }
+
+        private void emit(String html) {
+            body.append(html);
+            if (mainDepth > 0) main.append(html);
+        }
+
+        private void readTag() throws IOException {
+            tag.setLength(0);
+            int c = read();
+            if (c == '!') {
+                skipDeclaration();
+                return;
+            }
+            char quote = 0;
+            while (c != -1) {
+                if (quote != 0) {
+                    if (c == quote) quote = 0;
+                } else if (c == '"' || c == '\'') {
+                    quote = (char) c;
+                } else if (c == '>') {
+                    break;
+                }
+                tag.append((char) c);
+                c = read();
+            }
+            handleTag(tag.toString());
+        }
+
+        private void skipDeclaration() throws IOException {
+            int a = read();
+            int b = read();
+            if (a == '-' && b == '-') {
+                // Comment: read until -->
+                int p1 = 0, p2 = 0, c;
+                while ((c = read()) != -1) {
+                    if (c == '>' && p1 == '-' && p2 == '-') return;
+                    p2 = p1;
+                    p1 = c;
+                }
+                return;
+            }
+            int c = b;
+            while (c != -1 && c != '>') c = read();
+        }
+
+        private void handleTag(String raw) throws IOException {
+            boolean closing = raw.startsWith("/");
+            int start = closing ? 1 : 0;
+            int end = start;
+            while (end < raw.length() && !Character.isWhitespace(raw.charAt(end)) && raw.charAt(end) != '/') end++;
+            String name = raw.substring(start, end).toLowerCase(Locale.ROOT);
+            if (name.isEmpty()) return;
+            if (closing) {
+                closeTag(name);
+            } else {
+                Map<String, String> attrs = parseAttributes(raw, end);
+                openTag(name, attrs, raw.endsWith("/"));
+            }
+        }
+
+        private void openTag(String name, Map<String, String> attrs, boolean selfClosing) throws IOException {
+            if (name.equals("title") && !inBody) {
+                inTitle = true;
+                return;
+            }
+            if (name.equals("meta")) {
+                readMeta(attrs);
+                return;
+            }
+            if (name.equals("body")) {
+                inBody = true;
+                return;
+            }
+            if (name.equals("base") && attrs.get("href") != null && !inBody) {
+                String href = resolve(attrs.get("href"));
+                try {
+                    if (href != null) base = new URL(href);
+                } catch (IOException ignored) { }
+                return;
+            }
+            if (RAW_TEXT.contains(name)) {
+                skipRawText(name);
+                return;
+            }
+            if (!inBody) return;
+            if (!skipping.isEmpty() || SKIP.contains(name)) {
+                if (!VOID.contains(name) && !selfClosing) skipping.push(name);
+                return;
+            }
+            if (mainDepth == -1 && (name.equals("article") || name.equals("main"))) {
+                mainTag = name;
+                mainDepth = 1;
+                return;
+            }
+            if (mainDepth > 0 && name.equals(mainTag)) mainDepth++;
+            if (!KEEP.contains(name)) return;
+
+            if (name.equals("p")) seenParagraph = true;
+            if (name.equals("h1") && !seenParagraph && headingTitle.isEmpty()) inHeading = true;
+            if (inHeading) return;
+            if (name.equals("img")) {
+                emitImage(attrs);
+                return;
+            }
+            if (name.equals("a")) {
+                String href = resolve(attrs.get("href"));
+                emit(href != null ? "<a href=\"" + escapeAttr(href) + "\">" : "<a>");
+                return;
+            }
+            emit("<" + name + ">");
+        }
+
+        private void closeTag(String name) {
+            if (name.equals("title")) {
+                inTitle = false;
+                return;
+            }
+            if (!skipping.isEmpty()) {
+                // <li>, <p> and friends may be left open: an end tag closes back to its match
+                if (skipping.contains(name)) {
+                    while (!skipping.pop().equals(name)) { }
+                }
+                return;
+            }
+            if (mainDepth > 0 && name.equals(mainTag) && --mainDepth == 0) {
+                mainDepth = -2;
+                return;
+            }
+            if (inHeading && name.equals("h1")) {
+                inHeading = false;
+                return;
+            }
+            if (!inBody || !KEEP.contains(name) || VOID.contains(name) || inHeading) return;
+            emit("</" + name + ">");
+        }
+
+        private void emitImage(Map<String, String> attrs) {
+            String src = attrs.get("src");
+            if (src == null || src.startsWith("data:")) src = attrs.get("data-src");
+            if (src == null || src.startsWith("data:")) src = firstSrcset(attrs.get("srcset"));
+            String resolved = resolve(src);
+            if (resolved == null) return;
+            String alt = attrs.get("alt");
+            emit("<img src=\"" + escapeAttr(resolved) + "\" alt=\"" + escapeAttr(alt != null ? alt : "")
+                    + "\" loading=\"lazy\">");
+            bodyImages++;
+            if (mainDepth > 0) mainImages++;
+        }
+
+        private void readMeta(Map<String, String> attrs) {
+            String key = attrs.get("property");
+            if (key == null) key = attrs.get("name");
+            String content = attrs.get("content");
+            if (key == null || content == null) return;
+            switch (key.toLowerCase(Locale.ROOT)) {
+                case "og:title":
+                case "twitter:title":
+                    if (metaTitle.isEmpty()) metaTitle = decodeEntities(content).trim();
+                    break;
+                case "author":
+                case "article:author":
+                case "twitter:creator":
+                    if (article.author.isEmpty() && !content.startsWith("http")) {
+                        article.author = decodeEntities(content).trim();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void skipRawText(String name) throws IOException {
+            // Scan for "</name" without buffering the script or stylesheet
+            String close = "</" + name;
+            int matched = 0, c;
+            while ((c = read()) != -1) {
+                char lower = Character.toLowerCase((char) c);
+                if (lower == close.charAt(matched)) {
+                    if (++matched == close.length()) {
+                        while (c != -1 && c != '>') c = read();
+                        return;
+                    }
+                } else {
+                    matched = lower == '<' ? 1 : 0;
+                }
+            }
+        }
+
+        private String resolve(String url) {
+            if (url == null) return null;
+            url = decodeEntities(url.trim());
+            if (url.isEmpty() || url.startsWith("javascript:") || url.startsWith("data:")) return null;
+            try {
+                return base != null ? new URL(base, url).toString() : url;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    private static Map<String, String> parseAttributes(String raw, int from) {
+        Map<String, String> attrs = new HashMap<>();
+        int i = from, n = raw.length();
+        while (i < n) {
+            while (i < n && (Character.isWhitespace(raw.charAt(i)) || raw.charAt(i) == '/')) i++;
+            int nameStart = i;
+            while (i < n && raw.charAt(i) != '=' && !Character.isWhitespace(raw.charAt(i)) && raw.charAt(i) != '/') i++;
+            if (i == nameStart) {
+                i++;
+                continue;
+            }
+            String name = raw.substring(nameStart, i).toLowerCase(Locale.ROOT);
+            while (i < n && Character.isWhitespace(raw.charAt(i))) i++;
+            String value = "";
+            if (i < n && raw.charAt(i) == '=') {
+                i++;
+                while (i < n && Character.isWhitespace(raw.charAt(i))) i++;
+                if (i < n && (raw.charAt(i) == '"' || raw.charAt(i) == '\'')) {
+                    char q = raw.charAt(i++);
+                    int close = raw.indexOf(q, i);
+                    if (close < 0) close = n;
+                    value = raw.substring(i, close);
+                    i = close + 1;
+                } else {
+                    int valueStart = i;
+                    while (i < n && !Character.isWhitespace(raw.charAt(i))) i++;
+                    value = raw.substring(valueStart, i);
+                }
+            }
+            if (!attrs.containsKey(name)) attrs.put(name, value);
+        }
+        return attrs;
+    }
+
+    private static String firstSrcset(String srcset) {
+        if (srcset == null) return null;
+        String first = srcset.trim().split(",")[0].trim();
+        int space = first.indexOf(' ');
+        return space < 0 ? first : first.substring(0, space);
+    }
+
+    // ==================== Rendering ====================
+
+    /** Minimal standalone page for {@code loadDataWithBaseURL}; needs no JavaScript. */
+    static String render(Article article) {
+        StringBuilder sb = new StringBuilder(article.bodyHtml.length() + 2048);
+        sb.append("<!DOCTYPE html><html><head><meta charset=\"utf-8\">")
+          .append("<meta name=\"viewport\" content=\"width=device-width, initial-scale=1\">")
+          .append("<title>").append(escape(article.title)).append("</title><style>")
+          .append("body{margin:0 auto;max-width:42em;padding:16px 20px 48px;font:18px/1.6 Georgia,serif;")
+          .append("color:#1a1a1a;background:#fff;word-wrap:break-word}")
+          .append("h1{font:700 1.6em/1.25 sans-serif;margin:.4em 0}h2,h3,h4{font-family:sans-serif;line-height:1.3}")
+          .append(".byline{color:#6b6b6b;font:15px sans-serif;margin-bottom:1.5em}")
+          .append("img{max-width:100%;height:auto;display:block;margin:1em auto}")
+          .append("figcaption{color:#6b6b6b;font-size:.85em;text-align:center}")
+          .append("pre{overflow-x:auto;background:#f2f2f2;padding:12px;font-size:.8em}")
+          .append("code{font-size:.9em}blockquote{margin:0;padding-left:1em;border-left:3px solid #ccc;font-style:italic}")
+          .append("a{color:inherit}")
+          .append("@media (prefers-color-scheme:dark){body{color:#e6e6e6;background:#121212}")
+          .append("pre{background:#1e1e1e}.byline,figcaption{color:#9a9a9a}}")
+          .append("</style></head><body>");
+        if (!article.title.isEmpty()) sb.append("<h1>").append(escape(article.title)).append("</h1>");
+        if (!article.author.isEmpty()) {
+            sb.append("<div class=\"byline\">").append(escape(article.author)).append("</div>");
+        }
+        sb.append(article.bodyHtml).append("</body></html>");
+        return sb.toString();
+    }
+
+    // ==================== Text helpers ====================
+
+    private static Set<String> set(String... names) {
+        Set<String> set = new HashSet<>();
+        for (String name : names) set.add(name);
+        return set;
+    }
+
+    static String escape(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String rep = c == '<' ? "&lt;" : c == '>' ? "&gt;" : c == '&' ? "&amp;" : null;
+            if (rep != null) {
+                if (sb == null) sb = new StringBuilder(s.length() + 16).append(s, 0, i);
+                sb.append(rep);
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb != null ? sb.toString() : s;
+    }
+
+    private static String escapeAttr(String s) {
+        return escape(s).replace("\"", "&quot;");
+    }
+
+    private static String decodeEntities(String s) {
+        if (s.indexOf('&') < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            int semi = c == '&' ? s.indexOf(';', i) : -1;
+            if (semi > i && semi - i <= 10) {
+                String entity = s.substring(i + 1, semi);
+                String decoded = decodeEntity(entity);
+                if (decoded != null) {
+                    sb.append(decoded);
+                    i = semi + 1;
+                    continue;
+                }
+            }
+            sb.append(c);
+            i++;
+        }
+        return sb.toString();
+    }
+
+    private static String decodeEntity(String entity) {
+        switch (entity) {
+            case "amp": return "&";
+            case "lt": return "<";
+            case "gt": return ">";
+            case "quot": return "\"";
+            case "apos": return "'";
+            case "nbsp": return " ";
+            case "mdash": return "—";
+            case "ndash": return "–";
+            case "hellip": return "…";
+            case "rsquo": return "’";
+            case "lsquo": return "‘";
+            case "rdquo": return "”";
+            case "ldquo": return "“";
+            default: break;
+        }
+        try {
+            if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                return new String(Character.toChars(Integer.parseInt(entity.substring(2), 16)));
+            }
+            if (entity.startsWith("#")) {
+                return new String(Character.toChars(Integer.parseInt(entity.substring(1))));
+            }
+        } catch (IllegalArgumentException ignored) { }
+        return null;
+    }
+}
@@ -0,0 +1,227 @@
+package com.inulute.mediumunlocker;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decides whether a subresource URL on a mirror page is a tracker, ad or web font to drop.
+ * Rules from {@code res/raw/blocklist.txt} are compiled once into two character automata
+ * with flat open-addressed edge tables: host rules into a trie over the reversed host (so a
+ * rule also covers its subdomains), path rules into an Aho-Corasick automaton. {@link #shouldBlock} scans the URL
+ * string in place, one pass over host and path, without allocating.
+ */
+final class RequestBlocker {
+
+    private static final String TAG = "RequestBlocker";
+    private static final int ROOT = 0;
+
+    private static RequestBlocker instance;
+
+    /** Character automaton: edges live in an open-addressed table keyed by (node, char). */
+    private static final class Automaton {
+        int nodeCount = 1;
+        boolean[] terminal = new boolean[64];
+        int[] fail = new int[64];
+        char[] label = new char[64];
+        long[] edgeKeys = new long[256];
+        int[] edgeTargets = new int[256];
+        int edgeCount;
+        // Build-time only: children per node, for the breadth-first failure-link pass
+        final List<int[]> children = new ArrayList<>();
+
+        Automaton() {
+            Arrays.fill(edgeKeys, -1);
+            children.add(new int[0]);
+        }
+
+        int child(int node, char c) {
+            long key = ((long) node << 16) | c;
+            int mask = edgeKeys.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                long k = edgeKeys[i];
+                if (k == key) return edgeTargets[i];
+                if (k == -1) return -1;
+            }
+        }
+
+        int addChild(int node, char c) {
+            int existing = child(node, c);
+            if (existing >= 0) return existing;
+            if ((edgeCount + 1) * 2 > edgeKeys.length) growEdges();
+            int created = nodeCount++;
+            if (created == terminal.length) {
+                terminal = Arrays.copyOf(terminal, created * 2);
+                fail = Arrays.copyOf(fail, created * 2);
+                label = Arrays.copyOf(label, created * 2);
+            }
+            label[created] = c;
+            putEdge(((long) node << 16) | c, created);
+            int[] siblings = children.get(node);
+            int[] grown = Arrays.copyOf(siblings, siblings.length + 1);
+            grown[siblings.length] = created;
+            children.set(node, grown);
+            children.add(new int[0]);
+            return created;
+        }
+
+        private void putEdge(long key, int target) {
+            int mask = edgeKeys.length - 1;
+            int i = hash(key) & mask;
+            while (edgeKeys[i] != -1) i = (i + 1) & mask;
+            edgeKeys[i] = key;
+            edgeTargets[i] = target;
+            edgeCount++;
+        }
+
+        private void growEdges() {
+            long[] oldKeys = edgeKeys;
+            int[] oldTargets = edgeTargets;
+            edgeKeys = new long[oldKeys.length * 2];
+            edgeTargets = new int[oldKeys.length * 2];
+            Arrays.fill(edgeKeys, -1);
+            edgeCount = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1) putEdge(oldKeys[i], oldTargets[i]);
+            }
+        }
+
+        /** Aho-Corasick failure links; a node also matches if its failure target does. */
+        void buildFailureLinks() {
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int c : children.get(ROOT)) {
+                fail[c] = ROOT;
+                queue.add(c);
+            }
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                for (int c : children.get(node)) {
+                    int f = fail[node];
+                    while (f != ROOT && child(f, label[c]) < 0) f = fail[f];
+                    int target = child(f, label[c]);
+                    fail[c] = target >= 0 ? target : ROOT;
+                    terminal[c] |= terminal[fail[c]];
+                    queue.add(c);
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    private final Automaton hosts = new Automaton();
+    private final Automaton paths = new Automaton();
+    private final int ruleCount;
+
+    /** True unless the user switched blocking off in settings. */
+    static boolean isEnabled(Context context) {
+        return context.getSharedPreferences("MediumUnlockerPrefs", Context.MODE_PRIVATE)
+                .getBoolean(SettingsActivity.PREF_BLOCK_REQUESTS, true);
+    }
+
+    static synchronized RequestBlocker get(Context context) {
+        if (instance == null) instance = new RequestBlocker(readRules(context));
+        return instance;
+    }
+
+    RequestBlocker(List<String> rules) {
+        for (String rule : rules) {
+            if (rule.startsWith("/") || rule.startsWith(".")) {
+                int node = ROOT;
+                for (int i = 0; i < rule.length(); i++) node = paths.addChild(node, lower(rule.charAt(i)));
+                paths.terminal[node] = true;
+            } else {
+                int node = ROOT;
+                for (int i = rule.length() - 1; i >= 0; i--) node = hosts.addChild(node, lower(rule.charAt(i)));
+                hosts.terminal[node] = true;
+            }
+        }
+        paths.buildFailureLinks();
+        hosts.children.clear();
+        paths.children.clear();
+        ruleCount = rules.size();
+    }
+
+    int ruleCount() {
+        return ruleCount;
+    }
+
+    /** True if {@code url} (an absolute http(s) URL) matches a host or path rule. */
+    boolean shouldBlock(String url) {
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) return false;
+        int len = url.length();
+        int hostStart = schemeEnd + 3;
+        int hostEnd = hostStart;
+        char c;
+        while (hostEnd < len && (c = url.charAt(hostEnd)) != '/' && c != '?' && c != '#') hostEnd++;
+        int pathStart = hostEnd;
+        // Strip userinfo and port
+        for (int i = hostStart; i < hostEnd; i++) {
+            if (url.charAt(i) == '@') hostStart = i + 1;
+        }
+        for (int i = hostEnd - 1; i >= hostStart; i--) {
+            c = url.charAt(i);
+            if (c == ':') {
+                hostEnd = i;
+                break;
+            }
+            if (c < '0' || c > '9') break;
+        }
+        return matchesHost(url, hostStart, hostEnd) || matchesPath(url, pathStart, len);
+    }
+
+    private boolean matchesHost(String url, int start, int end) {
+        int node = ROOT;
+        for (int i = end - 1; i >= start; i--) {
+            node = hosts.child(node, lower(url.charAt(i)));
+            if (node < 0) return false;
+            if (hosts.terminal[node] && (i == start || url.charAt(i - 1) == '.')) return true;
+        }
+        return false;
+    }
+
+    private boolean matchesPath(String url, int start, int end) {
+        int node = ROOT;
+        for (int i = start; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '#') break;
+            c = lower(c);
+            int next;
+            while ((next = paths.child(node, c)) < 0 && node != ROOT) node = paths.fail[node];
+            node = next < 0 ? ROOT : next;
+            if (paths.terminal[node]) return true;
+        }
+        return false;
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+    }
+
+    private static List<String> readRules(Context context) {
+        List<String> rules = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                context.getResources().openRawResource(R.raw.blocklist), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) rules.add(line);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read block list", e);
+        }
+        return rules;
+    }
+}
@@ -0,0 +1,131 @@
+package com.inulute.mediumunlocker;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.webkit.JavascriptInterface;
+
+import java.util.Locale;
+
+/**
+ * Streams the reading position of the open article into {@link HistoryManager} while the user
+ * scrolls, so it survives a renderer crash or process death instead of depending on a save in
+ * {@code onPause}. The page side is a passive scroll listener throttled to one animation frame
+ * and {@link #MIN_REPORT_INTERVAL_MS}; reports are coalesced here and written at most once per
+ * {@link #FLUSH_DELAY_MS}.
+ *
+ * Each tracked page gets a token, so reports from a page that has since been left are dropped.
+ */
+final class ScrollReporter {
+
+    static final String BRIDGE_NAME = "MediumUnlockerScroll";
+    private static final long FLUSH_DELAY_MS = 1000;
+    private static final int MIN_REPORT_INTERVAL_MS = 200;
+    // Layout counts as settled once the document height holds for this many frames
+    private static final int STABLE_FRAMES = 3;
+    private static final int RESTORE_TIMEOUT_MS = 5000;
+
+    private final HistoryManager history;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flushTask = this::flush;
+
+    // Guarded by this; reports arrive on the WebView's JavaBridge thread
+    private String urlKey;
+    private int token;
+    private int scrollY;
+    private float fraction;
+    private boolean dirty;
+    private boolean flushScheduled;
+
+    ScrollReporter(HistoryManager history) {
+        this.history = history;
+    }
+
+    /** Starts attributing reports to {@code originalUrl}; returns the token for the page script. */
+    int track(String originalUrl) {
+        flush();
+        synchronized (this) {
+            urlKey = originalUrl;
+            dirty = false;
+            return ++token;
+        }
+    }
+
+    /** Saves what is pending and ignores reports until the next {@link #track}. */
+    void stop() {
+        flush();
+        synchronized (this) {
+            urlKey = null;
+            token++;
+        }
+    }
+
+    @JavascriptInterface
+    public void report(int pageToken, int y, int documentHeight) {
+        update(pageToken, y, documentHeight);
+    }
+
+    /** Position measured from the view, for reader mode where page scripts are off. */
+    void reportNative(int y, float contentHeightPx) {
+        int current;
+        synchronized (this) {
+            current = token;
+        }
+        update(current, y, contentHeightPx);
+    }
+
+    private synchronized void update(int pageToken, int y, float height) {
+        if (pageToken != token || urlKey == null) return;
+        scrollY = y;
+        fraction = height > 0 ? y / height : -1f;
+        dirty = true;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            mainHandler.postDelayed(flushTask, FLUSH_DELAY_MS);
+        }
+    }
+
+    /** Writes the latest position now, if there is one. Any thread. */
+    void flush() {
+        String key;
+        int y;
+        float f;
+        synchronized (this) {
+            if (flushScheduled) {
+                flushScheduled = false;
+                mainHandler.removeCallbacks(flushTask);
+            }
+            if (!dirty || urlKey == null) return;
+            dirty = false;
+            key = urlKey;
+            y = scrollY;
+            f = fraction;
+        }
+        if (y > 0) history.savePosition(key, y, f);
+    }
+
+    /**
+     * Page script that installs the reporter and, if a position is given, scrolls there once
+     * the document height has stopped changing. The restore is skipped if the page has been
+     * scrolled by then. Safe to evaluate more than once per page.
+     */
+    static String script(int pageToken, float restoreFraction, int restoreY) {
+        return String.format(Locale.US, "(function(){if(window.__muScroll)return;window.__muScroll=1;"
+                + "var B=window." + BRIDGE_NAME + ",t=%d,last=0,ly=-1,queued=false,trail=0;"
+                + "function send(){queued=false;var now=Date.now();"
+                + "if(now-last<%d){if(!trail)trail=setTimeout(function(){trail=0;send();},%d-(now-last));return;}"
+                + "last=now;var y=Math.round(window.scrollY);if(y===ly)return;ly=y;"
+                + "B.report(t,y,document.documentElement.scrollHeight);}"
+                + "window.addEventListener('scroll',function(){if(!queued){queued=true;requestAnimationFrame(send);}},"
+                + "{passive:true});"
+                + "var f=%f,y0=%d;if(f<=0&&y0<=0)return;"
+                + "var prev=-1,stable=0,start=Date.now();"
+                + "function go(h){window.scrollTo(0,f>0?Math.round(f*h):y0);}"
+                + "function settle(){if(window.scrollY>0)return;var h=document.documentElement.scrollHeight;"
+                + "if(h===prev&&h>window.innerHeight&&document.readyState!=='loading'){if(++stable>=%d){go(h);return;}}"
+                + "else{stable=0;prev=h;}"
+                + "if(Date.now()-start<%d)requestAnimationFrame(settle);else go(h);}"
+                + "requestAnimationFrame(settle);})()",
+                pageToken, MIN_REPORT_INTERVAL_MS, MIN_REPORT_INTERVAL_MS,
+                restoreFraction, restoreY, STABLE_FRAMES, RESTORE_TIMEOUT_MS);
+    }
+}
@@ -1,5 +1,6 @@
 package com.inulute.mediumunlocker;
 
+import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.View;
@@ -14,6 +15,8 @@ import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 import com.google.android.material.textfield.TextInputEditText;
 
+import java.util.Locale;
+
 public class SettingsActivity extends AppCompatActivity {
 
     private static final String PREFS_NAME = "MediumUnlockerPrefs";
@@ -23,18 +26,30 @@ public class SettingsActivity extends AppCompatActivity {
     static final String PREF_MAX_HISTORY = "max_history";
     static final String PREF_HOME_FEED = "home_feed";
     static final String PREF_MIRROR = "mirror";
+    static final String PREF_SEARCH_INDEX = "search_index";
+    static final String PREF_RACE_MIRRORS = "race_mirrors";
+    static final String PREF_BLOCK_REQUESTS = "block_requests";
+    static final String PREF_REQUESTS_BLOCKED = "requests_blocked";
+    static final String PREF_READER_MODE = "reader_mode";
+    static final String PREF_DATA_SAVER = "data_saver";
+    static final String PREF_DATA_SAVED_BYTES = "data_saved_bytes";
+    static final String PREF_ARCHIVE_BUDGET_MB = "archive_budget_mb";
+    static final String PREF_PREFETCH_BOOKMARKS = "prefetch_bookmarks";
+    static final String PREF_PREFETCH_RECENT = "prefetch_recent";
     static final String DEFAULT_MIRROR = "freedium_mirror";
 
     static final String[] MIRROR_LABELS = {"Freedium Mirror", "Freedium", "Archive.is", "Archive.is (Alt)"};
     static final String[] MIRROR_VALUES = {"freedium_mirror", "freedium", "archive_newest", "archive_oldest"};
+    // Indices are shared with MirrorHealth and the WebView failover
+    static final String[] MIRROR_BASES = {
+            "https://freedium-mirror.cfd/",
+            "https://freedium.cfd/",
+            "https://archive.is/newest/",
+            "https://archive.is/oldest/"
+    };
 
     public static String getMirrorBaseUrl(String mirrorValue) {
-        switch (mirrorValue) {
-            case "freedium": return "https://freedium.cfd/";
-            case "archive_newest": return "https://archive.is/newest/";
-            case "archive_oldest": return "https://archive.is/oldest/";
-            default: return "https://freedium-mirror.cfd/";
-        }
+        return MIRROR_BASES[mirrorIndex(mirrorValue)];
     }
 
     private static final String[] FEED_LABELS = {"Recent Articles", "Bookmarks", "Both"};
@@ -44,11 +59,21 @@ public class SettingsActivity extends AppCompatActivity {
     private TextView textZoomValue;
     private SwitchMaterial rememberPositionSwitch;
     private SwitchMaterial newWindowSwitch;
+    private SwitchMaterial readerModeSwitch;
+    private SwitchMaterial dataSaverSwitch;
+    private SwitchMaterial searchIndexSwitch;
+    private SwitchMaterial raceMirrorsSwitch;
+    private SwitchMaterial blockRequestsSwitch;
+    private SwitchMaterial prefetchBookmarksSwitch;
     private TextInputEditText maxHistoryInput;
     private TextView homeFeedValue;
     private TextView mirrorValue;
+    private TextView archiveBudgetValue;
+    private TextView prefetchRecentValue;
     private String selectedFeed = "history";
     private String selectedMirror = DEFAULT_MIRROR;
+    private int selectedArchiveBudget = ArticleArchive.DEFAULT_BUDGET_MB;
+    private int selectedPrefetchRecent = 0;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -62,6 +87,10 @@ public class SettingsActivity extends AppCompatActivity {
                 saveSettings();
                 return true;
             }
+            if (item.getItemId() == R.id.action_diagnostics) {
+                startActivity(new Intent(this, DiagnosticsActivity.class));
+                return true;
+            }
             return false;
         });
 
@@ -69,9 +98,17 @@ public class SettingsActivity extends AppCompatActivity {
         textZoomValue = findViewById(R.id.textZoomValue);
         rememberPositionSwitch = findViewById(R.id.rememberPositionSwitch);
         newWindowSwitch = findViewById(R.id.newWindowSwitch);
+        readerModeSwitch = findViewById(R.id.readerModeSwitch);
+        dataSaverSwitch = findViewById(R.id.dataSaverSwitch);
+        searchIndexSwitch = findViewById(R.id.searchIndexSwitch);
+        raceMirrorsSwitch = findViewById(R.id.raceMirrorsSwitch);
+        blockRequestsSwitch = findViewById(R.id.blockRequestsSwitch);
         maxHistoryInput = findViewById(R.id.maxHistoryInput);
         homeFeedValue = findViewById(R.id.homeFeedValue);
         mirrorValue = findViewById(R.id.mirrorValue);
+        archiveBudgetValue = findViewById(R.id.archiveBudgetValue);
+        prefetchBookmarksSwitch = findViewById(R.id.prefetchBookmarksSwitch);
+        prefetchRecentValue = findViewById(R.id.prefetchRecentValue);
 
         loadSettings();
         setupZoomSeekBar();
@@ -90,13 +127,28 @@ public class SettingsActivity extends AppCompatActivity {
         if (mirrorRow != null) {
             mirrorRow.setOnClickListener(v -> showMirrorPicker());
         }
+
+        View archiveBudgetRow = findViewById(R.id.archiveBudgetRow);
+        if (archiveBudgetRow != null) {
+            archiveBudgetRow.setOnClickListener(v -> showArchiveBudgetPicker());
+        }
+
+        View prefetchRecentRow = findViewById(R.id.prefetchRecentRow);
+        if (prefetchRecentRow != null) {
+            prefetchRecentRow.setOnClickListener(v -> showPrefetchRecentPicker());
+        }
     }
 
     private void showMirrorPicker() {
         int current = mirrorIndex(selectedMirror);
+        MirrorHealth health = MirrorHealth.get(this);
+        String[] labels = new String[MIRROR_LABELS.length];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = MIRROR_LABELS[i] + "\n" + health.describe(i);
+        }
         new AlertDialog.Builder(this)
                 .setTitle("Mirror Server")
-                .setSingleChoiceItems(MIRROR_LABELS, current, (dialog, which) -> {
+                .setSingleChoiceItems(labels, current, (dialog, which) -> {
                     selectedMirror = MIRROR_VALUES[which];
                     mirrorValue.setText(MIRROR_LABELS[which]);
                     dialog.dismiss();
@@ -105,13 +157,59 @@ public class SettingsActivity extends AppCompatActivity {
                 .show();
     }
 
-    private int mirrorIndex(String value) {
+    static int mirrorIndex(String value) {
         for (int i = 0; i < MIRROR_VALUES.length; i++) {
             if (MIRROR_VALUES[i].equals(value)) return i;
         }
         return 0;
     }
 
+    private void showArchiveBudgetPicker() {
+        int[] options = ArticleArchive.BUDGET_OPTIONS_MB;
+        String[] labels = new String[options.length];
+        int current = 0;
+        for (int i = 0; i < options.length; i++) {
+            labels[i] = archiveBudgetLabel(options[i]);
+            if (options[i] == selectedArchiveBudget) current = i;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Offline Archive")
+                .setSingleChoiceItems(labels, current, (dialog, which) -> {
+                    selectedArchiveBudget = options[which];
+                    archiveBudgetValue.setText(labels[which]);
+                    dialog.dismiss();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private static String archiveBudgetLabel(int megabytes) {
+        return megabytes == 0 ? "Off" : "Keep up to " + megabytes + " MB of articles offline";
+    }
+
+    private void showPrefetchRecentPicker() {
+        int[] options = PrefetchJobService.RECENT_OPTIONS;
+        String[] labels = new String[options.length];
+        int current = 0;
+        for (int i = 0; i < options.length; i++) {
+            labels[i] = prefetchRecentLabel(options[i]);
+            if (options[i] == selectedPrefetchRecent) current = i;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Download Recent Articles")
+                .setSingleChoiceItems(labels, current, (dialog, which) -> {
+                    selectedPrefetchRecent = options[which];
+                    prefetchRecentValue.setText(labels[which]);
+                    dialog.dismiss();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private static String prefetchRecentLabel(int count) {
+        return count == 0 ? "Off" : "Latest " + count + " articles";
+    }
+
     private void showFeedPicker() {
         int current = feedIndex(selectedFeed);
         new AlertDialog.Builder(this)
@@ -141,6 +239,23 @@ public class SettingsActivity extends AppCompatActivity {
 
         rememberPositionSwitch.setChecked(prefs.getBoolean(PREF_REMEMBER_POSITION, true));
         newWindowSwitch.setChecked(prefs.getBoolean(PREF_NEW_WINDOW, false));
+        readerModeSwitch.setChecked(prefs.getBoolean(PREF_READER_MODE, false));
+        dataSaverSwitch.setChecked(prefs.getBoolean(PREF_DATA_SAVER, false));
+        long savedBytes = prefs.getLong(PREF_DATA_SAVED_BYTES, 0);
+        if (savedBytes >= 1024 * 1024) {
+            TextView dataSaverSubtitle = findViewById(R.id.dataSaverSubtitle);
+            dataSaverSubtitle.setText(String.format(Locale.US,
+                    "Shrink article images to fit the screen (%.1f MB saved)", savedBytes / (1024f * 1024f)));
+        }
+        searchIndexSwitch.setChecked(prefs.getBoolean(PREF_SEARCH_INDEX, false));
+        raceMirrorsSwitch.setChecked(prefs.getBoolean(PREF_RACE_MIRRORS, false));
+        blockRequestsSwitch.setChecked(prefs.getBoolean(PREF_BLOCK_REQUESTS, true));
+        long blocked = prefs.getLong(PREF_REQUESTS_BLOCKED, 0);
+        if (blocked > 0) {
+            TextView blockRequestsSubtitle = findViewById(R.id.blockRequestsSubtitle);
+            blockRequestsSubtitle.setText(String.format(Locale.US,
+                    "Skip ads, analytics and web fonts on mirror pages (%,d blocked)", blocked));
+        }
 
         int maxHistory = prefs.getInt(PREF_MAX_HISTORY, 100);
         maxHistoryInput.setText(String.valueOf(maxHistory));
@@ -150,6 +265,13 @@ public class SettingsActivity extends AppCompatActivity {
 
         selectedMirror = prefs.getString(PREF_MIRROR, DEFAULT_MIRROR);
         if (mirrorValue != null) mirrorValue.setText(MIRROR_LABELS[mirrorIndex(selectedMirror)]);
+
+        selectedArchiveBudget = prefs.getInt(PREF_ARCHIVE_BUDGET_MB, ArticleArchive.DEFAULT_BUDGET_MB);
+        if (archiveBudgetValue != null) archiveBudgetValue.setText(archiveBudgetLabel(selectedArchiveBudget));
+
+        prefetchBookmarksSwitch.setChecked(prefs.getBoolean(PREF_PREFETCH_BOOKMARKS, true));
+        selectedPrefetchRecent = prefs.getInt(PREF_PREFETCH_RECENT, 0);
+        if (prefetchRecentValue != null) prefetchRecentValue.setText(prefetchRecentLabel(selectedPrefetchRecent));
     }
 
     private void setupZoomSeekBar() {
@@ -171,19 +293,32 @@ public class SettingsActivity extends AppCompatActivity {
             try {
                 maxHistory = Integer.parseInt(maxHistoryText);
                 if (maxHistory < 10) maxHistory = 10;
-                if (maxHistory > 1000) maxHistory = 1000;
+                if (maxHistory > 50000) maxHistory = 50000;
             } catch (NumberFormatException ignored) { }
         }
 
-        getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-                .edit()
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        int previousBudget = prefs.getInt(PREF_ARCHIVE_BUDGET_MB, ArticleArchive.DEFAULT_BUDGET_MB);
+        prefs.edit()
                 .putInt(PREF_TEXT_ZOOM, textZoomSeekBar.getProgress() + 50)
                 .putBoolean(PREF_REMEMBER_POSITION, rememberPositionSwitch.isChecked())
                 .putBoolean(PREF_NEW_WINDOW, newWindowSwitch.isChecked())
+                .putBoolean(PREF_READER_MODE, readerModeSwitch.isChecked())
+                .putBoolean(PREF_DATA_SAVER, dataSaverSwitch.isChecked())
                 .putInt(PREF_MAX_HISTORY, maxHistory)
                 .putString(PREF_HOME_FEED, selectedFeed)
                 .putString(PREF_MIRROR, selectedMirror)
+                .putBoolean(PREF_SEARCH_INDEX, searchIndexSwitch.isChecked())
+                .putBoolean(PREF_RACE_MIRRORS, raceMirrorsSwitch.isChecked())
+                .putBoolean(PREF_BLOCK_REQUESTS, blockRequestsSwitch.isChecked())
+                .putInt(PREF_ARCHIVE_BUDGET_MB, selectedArchiveBudget)
+                .putBoolean(PREF_PREFETCH_BOOKMARKS, prefetchBookmarksSwitch.isChecked())
+                .putInt(PREF_PREFETCH_RECENT, selectedPrefetchRecent)
                 .apply();
+        HistoryManager.getInstance(this).setSearchIndexEnabled(this, searchIndexSwitch.isChecked());
+        if (selectedArchiveBudget == 0) ArticleArchive.get(this).clear();
+        else if (selectedArchiveBudget < previousBudget) ArticleArchive.get(this).trim();
+        PrefetchJobService.schedule(this);
 
         Toast.makeText(this, "Settings saved", Toast.LENGTH_SHORT).show();
         finish();
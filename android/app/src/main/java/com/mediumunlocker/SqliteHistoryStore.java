@@ -0,0 +1,192 @@
+package com.inulute.mediumunlocker;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SQLite backend for {@link HistoryManager} with an external-content FTS4 index over title
+ * and URL, kept in sync by triggers, so history search is an index lookup instead of a scan.
+ */
+class SqliteHistoryStore implements HistoryStore {
+
+    private static final String TAG = "SqliteHistoryStore";
+    private static final String DB_NAME = "history.db";
+    private static final int DB_VERSION = 1;
+
+    private final Context context;
+    private final Helper helper;
+    private SQLiteDatabase db;
+    private long nextSeq = 1;
+
+    private static class Helper extends SQLiteOpenHelper {
+        Helper(Context context) {
+            super(context, DB_NAME, null, DB_VERSION);
+        }
+
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            db.enableWriteAheadLogging();
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE items ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "list INTEGER NOT NULL, "
+                    + "url TEXT NOT NULL, "
+                    + "title TEXT NOT NULL, "
+                    + "freedium_url TEXT NOT NULL, "
+                    + "timestamp INTEGER NOT NULL, "
+                    + "seq INTEGER NOT NULL, "
+                    + "UNIQUE(list, url))");
+            db.execSQL("CREATE INDEX items_seq ON items(list, seq)");
+            db.execSQL("CREATE VIRTUAL TABLE items_fts USING fts4(content=\"items\", title, url)");
+            db.execSQL("CREATE TRIGGER items_bd BEFORE DELETE ON items BEGIN "
+                    + "DELETE FROM items_fts WHERE docid = old.id; END");
+            db.execSQL("CREATE TRIGGER items_bu BEFORE UPDATE ON items BEGIN "
+                    + "DELETE FROM items_fts WHERE docid = old.id; END");
+            db.execSQL("CREATE TRIGGER items_au AFTER UPDATE ON items BEGIN "
+                    + "INSERT INTO items_fts(docid, title, url) VALUES (new.id, new.title, new.url); END");
+            db.execSQL("CREATE TRIGGER items_ai AFTER INSERT ON items BEGIN "
+                    + "INSERT INTO items_fts(docid, title, url) VALUES (new.id, new.title, new.url); END");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) { }
+    }
+
+    SqliteHistoryStore(Context context) {
+        this.context = context.getApplicationContext();
+        this.helper = new Helper(this.context);
+    }
+
+    @Override
+    public boolean exists() {
+        return context.getDatabasePath(DB_NAME).exists();
+    }
+
+    @Override
+    public synchronized void open(Replay replay) {
+        db = helper.getWritableDatabase();
+        try (Cursor c = db.rawQuery(
+                "SELECT list, title, url, freedium_url, timestamp, seq FROM items ORDER BY seq", null)) {
+            while (c.moveToNext()) {
+                replay.put(c.getInt(0), new HistoryManager.HistoryItem(
+                        c.getString(1), c.getString(2), c.getString(3), c.getLong(4)));
+                nextSeq = c.getLong(5) + 1;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void put(int list, HistoryManager.HistoryItem item) {
+        ContentValues values = new ContentValues();
+        values.put("title", item.title);
+        values.put("freedium_url", item.freediumUrl);
+        values.put("timestamp", item.timestamp);
+        values.put("seq", nextSeq++);
+        try {
+            int updated = db.update("items", values, "list = ? AND url = ?",
+                    new String[]{String.valueOf(list), item.originalUrl});
+            if (updated == 0) {
+                values.put("list", list);
+                values.put("url", item.originalUrl);
+                db.insertOrThrow("items", null, values);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write history item", e);
+        }
+    }
+
+    @Override
+    public synchronized void remove(int list, String originalUrl) {
+        db.delete("items", "list = ? AND url = ?", new String[]{String.valueOf(list), originalUrl});
+    }
+
+    @Override
+    public synchronized void clear(int list) {
+        db.delete("items", "list = ?", new String[]{String.valueOf(list)});
+    }
+
+    @Override
+    public synchronized void batch(Runnable writes) {
+        db.beginTransaction();
+        try {
+            writes.run();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public boolean needsCompaction(int liveCount) {
+        return false;
+    }
+
+    @Override
+    public long checkpoint() {
+        return 0;
+    }
+
+    @Override
+    public void compact(List<HistoryManager.HistoryItem> history, List<HistoryManager.HistoryItem> bookmarks,
+                        long checkpoint) { }
+
+    /** See {@link HistoryStore#search}; each query word becomes an FTS prefix term. */
+    @Override
+    public List<HistoryManager.HistoryItem> search(int list, String query, int offset, int limit) {
+        List<HistoryManager.HistoryItem> results = new ArrayList<>();
+        StringBuilder anyColumn = new StringBuilder();
+        StringBuilder titleOnly = new StringBuilder();
+        for (String term : HistoryManager.searchTerms(query)) {
+            if (anyColumn.length() > 0) {
+                anyColumn.append(' ');
+                titleOnly.append(' ');
+            }
+            anyColumn.append(term).append('*');
+            titleOnly.append("title:").append(term).append('*');
+        }
+        if (anyColumn.length() == 0) return results;
+        SQLiteDatabase database;
+        synchronized (this) {
+            database = db;
+        }
+        if (database == null) return results;
+        try (Cursor c = database.rawQuery(
+                "SELECT i.title, i.url, i.freedium_url, i.timestamp, "
+                        + "i.id IN (SELECT docid FROM items_fts WHERE items_fts MATCH ?) AS title_hit "
+                        + "FROM items_fts f JOIN items i ON i.id = f.docid "
+                        + "WHERE items_fts MATCH ? AND i.list = ? "
+                        + "ORDER BY title_hit DESC, i.seq DESC LIMIT ? OFFSET ?",
+                new String[]{titleOnly.toString(), anyColumn.toString(), String.valueOf(list),
+                        String.valueOf(limit), String.valueOf(offset)})) {
+            while (c.moveToNext()) {
+                results.add(new HistoryManager.HistoryItem(
+                        c.getString(0), c.getString(1), c.getString(2), c.getLong(3)));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "History search failed", e);
+        }
+        return results;
+    }
+
+    @Override
+    public synchronized void close() {
+        helper.close();
+        db = null;
+    }
+
+    @Override
+    public synchronized void delete() {
+        close();
+        context.deleteDatabase(DB_NAME);
+    }
+}
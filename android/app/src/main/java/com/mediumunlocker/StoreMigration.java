@@ -0,0 +1,80 @@
+package com.inulute.mediumunlocker;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Versioned, resumable data migrations. Step {@code i} upgrades the stored data from version
+ * {@code i} to {@code i + 1} and runs as a series of bounded chunks on the background
+ * executor, so other queued work interleaves with it. The version and the step's cursor are
+ * committed after every chunk; a killed process picks up at the last committed chunk.
+ */
+class StoreMigration {
+
+    private static final String TAG = "StoreMigration";
+    private static final String KEY_VERSION = "migration_version";
+    private static final String KEY_CURSOR = "migration_cursor";
+    private static final long RETRY_DELAY_MS = 30_000;
+
+    interface Step {
+        /**
+         * Does at most one chunk of work starting at {@code cursor} and returns the cursor to
+         * resume from, or -1 when the step is complete. Must be safe to repeat from the last
+         * committed cursor.
+         */
+        int runChunk(int cursor);
+    }
+
+    private final SharedPreferences prefs;
+    private final ScheduledExecutorService executor;
+    private final List<Step> steps;
+    private final Runnable onComplete;
+
+    StoreMigration(SharedPreferences prefs, ScheduledExecutorService executor, List<Step> steps,
+                   Runnable onComplete) {
+        this.prefs = prefs;
+        this.executor = executor;
+        this.steps = steps;
+        this.onComplete = onComplete;
+    }
+
+    boolean isComplete() {
+        return prefs.getInt(KEY_VERSION, 0) >= steps.size();
+    }
+
+    /** True once the data has been upgraded past step {@code step}. */
+    boolean isDone(int step) {
+        return prefs.getInt(KEY_VERSION, 0) > step;
+    }
+
+    void start() {
+        executor.execute(this::runNext);
+    }
+
+    private void runNext() {
+        int version = prefs.getInt(KEY_VERSION, 0);
+        if (version >= steps.size()) {
+            onComplete.run();
+            return;
+        }
+        int cursor = prefs.getInt(KEY_CURSOR, 0);
+        int next;
+        try {
+            next = steps.get(version).runChunk(cursor);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Migration step " + version + " failed at " + cursor, e);
+            executor.schedule(this::runNext, RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+            return;
+        }
+        SharedPreferences.Editor editor = prefs.edit();
+        if (next < 0) editor.putInt(KEY_VERSION, version + 1).putInt(KEY_CURSOR, 0);
+        else editor.putInt(KEY_CURSOR, next);
+        // commit, not apply: the chunk's writes are already durable and must not run ahead of it
+        editor.commit();
+        executor.execute(this::runNext);
+    }
+}
@@ -0,0 +1,194 @@
+package com.inulute.mediumunlocker;
+
+/**
+ * Maps the many spellings of a Medium article URL to one identity key. Share sheets hand us
+ * {@code ?source=} tracking parameters, {@code m.medium.com}, publication custom domains,
+ * {@code /p/<id>} short links and trailing slashes; all of them carry the same hex post ID,
+ * which becomes the key. URLs without a post ID fall back to their cleaned form.
+ *
+ * Hand-rolled index scanning rather than regex or {@link java.net.URI}: this runs for every
+ * history row and bookmark check. {@link #keyFingerprint} hashes the key as it is scanned,
+ * so membership checks never build it.
+ */
+final class UrlCanonicalizer {
+
+    private static final String KEY_PREFIX = "medium:";
+    // Medium post IDs are 10-12 lowercase hex digits at the end of the slug
+    private static final int MIN_ID_LENGTH = 10;
+    private static final int MAX_ID_LENGTH = 12;
+
+    // Not "sk": on friend links it is the key that unlocks the article
+    private static final String[] TRACKING_PARAMS = {
+            "source", "gi", "ref", "fbclid", "gclid", "igshid",
+            "_branch_match_id", "_branch_referrer", "responsesOpen", "postPublishedType"
+    };
+
+    private UrlCanonicalizer() { }
+
+    /** Identity key for history, bookmarks, reading positions and caches. */
+    static String key(String url) {
+        if (url == null) return "";
+        long id = postIdRange(url);
+        return id >= 0 ? KEY_PREFIX + url.substring(rangeStart(id), rangeEnd(id)) : clean(url);
+    }
+
+    /** {@code UrlFingerprintSet.fingerprint(key(url))}, computed without building the key. */
+    static long keyFingerprint(String url) {
+        if (url == null) return UrlFingerprintSet.fingerprint("");
+        long id = postIdRange(url);
+        if (id < 0) return UrlFingerprintSet.finish(clean(url, null));
+        long h = UrlFingerprintSet.hash(UrlFingerprintSet.SEED, KEY_PREFIX, 0, KEY_PREFIX.length());
+        return UrlFingerprintSet.finish(UrlFingerprintSet.hash(h, url, rangeStart(id), rangeEnd(id)));
+    }
+
+    /**
+     * Normalized URL suitable for storing and loading: lowercase scheme and host, {@code m.}
+     * and {@code www.} stripped from medium.com, tracking parameters, fragment and trailing
+     * slash removed. Non-URLs are returned trimmed.
+     */
+    static String clean(String url) {
+        if (url == null) return "";
+        StringBuilder sb = new StringBuilder(url.length());
+        clean(url, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Writes the cleaned form of {@code url} to {@code out}, or only hashes it when {@code out}
+     * is null. Returns the unfinished {@link UrlFingerprintSet} hash of the cleaned form.
+     */
+    private static long clean(String url, StringBuilder out) {
+        long h = UrlFingerprintSet.SEED;
+        int begin = 0;
+        int len = url.length();
+        while (begin < len && url.charAt(begin) <= ' ') begin++;
+        while (len > begin && url.charAt(len - 1) <= ' ') len--;
+        int schemeEnd = url.indexOf("://", begin);
+        if (schemeEnd <= begin || schemeEnd >= len) return append(out, h, url, begin, len);
+
+        int hostStart = schemeEnd + 3;
+        int pathStart = hostStart;
+        while (pathStart < len && "/?#".indexOf(url.charAt(pathStart)) < 0) pathStart++;
+        int end = url.indexOf('#', pathStart);
+        if (end < 0 || end > len) end = len;
+        int queryStart = url.indexOf('?', pathStart);
+        if (queryStart < 0 || queryStart > end) queryStart = end;
+        int pathEnd = queryStart;
+        while (pathEnd > pathStart && url.charAt(pathEnd - 1) == '/') pathEnd--;
+
+        int hostLength = pathStart - hostStart;
+        if (hostLength == 12 && url.regionMatches(true, hostStart, "m.medium.com", 0, 12)) {
+            hostStart += 2;
+        } else if (hostLength == 14 && url.regionMatches(true, hostStart, "www.medium.com", 0, 14)) {
+            hostStart += 4;
+        }
+
+        if (isMediumHost(url, hostStart, pathStart) && schemeEnd - begin == 4
+                && url.regionMatches(true, begin, "http", 0, 4)) {
+            h = append(out, h, "https", 0, 5);
+        } else {
+            h = appendLowerCase(out, h, url, begin, schemeEnd);
+        }
+        h = append(out, h, "://", 0, 3);
+        h = appendLowerCase(out, h, url, hostStart, pathStart);
+        h = append(out, h, url, pathStart, pathEnd);
+        boolean first = true;
+        int p = queryStart + 1;
+        while (p < end) {
+            int amp = url.indexOf('&', p);
+            if (amp < 0 || amp > end) amp = end;
+            if (amp > p && !isTrackingParam(url, p, amp)) {
+                h = append(out, h, first ? "?" : "&", 0, 1);
+                h = append(out, h, url, p, amp);
+                first = false;
+            }
+            p = amp + 1;
+        }
+        return h;
+    }
+
+    /** The article's hex post ID, or null if the URL does not identify a Medium post. */
+    static String postId(String url) {
+        long id = postIdRange(url);
+        return id >= 0 ? url.substring(rangeStart(id), rangeEnd(id)) : null;
+    }
+
+    /** Bounds of the post ID in {@code url} packed as {@code start << 32 | end}, or -1. */
+    private static long postIdRange(String url) {
+        int schemeEnd = url.indexOf("://");
+        int pathStart = url.indexOf('/', schemeEnd < 0 ? 0 : schemeEnd + 3);
+        if (pathStart < 0) return -1;
+        int end = url.length();
+        for (int i = pathStart; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        while (end > pathStart && url.charAt(end - 1) == '/') end--;
+        int segmentStart = url.lastIndexOf('/', end - 1) + 1;
+        if (segmentStart <= pathStart) return -1;
+
+        // Short form: /p/<id>
+        if (segmentStart >= 3 && url.regionMatches(segmentStart - 3, "/p/", 0, 3)) {
+            return hexIdRange(url, segmentStart, end);
+        }
+        // Slug form: /@author/some-title-<id> or a custom domain /some-title-<id>
+        int dash = url.lastIndexOf('-', end - 1);
+        if (dash < segmentStart) return -1;
+        return hexIdRange(url, dash + 1, end);
+    }
+
+    private static long hexIdRange(String s, int start, int end) {
+        int length = end - start;
+        if (length < MIN_ID_LENGTH || length > MAX_ID_LENGTH) return -1;
+        boolean letter = false;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= 'a' && c <= 'f') letter = true;
+            else if (c < '0' || c > '9') return -1;
+        }
+        // All-digit suffixes are far more often dates or counters than post IDs
+        return letter ? (long) start << 32 | end : -1;
+    }
+
+    private static int rangeStart(long range) {
+        return (int) (range >>> 32);
+    }
+
+    private static int rangeEnd(long range) {
+        return (int) range;
+    }
+
+    /** medium.com itself or one of its subdomains, but not e.g. notmedium.com. */
+    private static boolean isMediumHost(String s, int start, int end) {
+        int length = end - start;
+        return length == 10 && s.regionMatches(true, start, "medium.com", 0, 10)
+                || length > 11 && s.regionMatches(true, end - 11, ".medium.com", 0, 11);
+    }
+
+    private static boolean isTrackingParam(String s, int start, int end) {
+        int eq = s.indexOf('=', start);
+        int nameEnd = eq < 0 || eq > end ? end : eq;
+        if (s.startsWith("utm_", start)) return true;
+        for (String param : TRACKING_PARAMS) {
+            if (param.length() == nameEnd - start && s.startsWith(param, start)) return true;
+        }
+        return false;
+    }
+
+    private static long append(StringBuilder out, long h, String s, int start, int end) {
+        if (out != null) out.append(s, start, end);
+        return UrlFingerprintSet.hash(h, s, start, end);
+    }
+
+    private static long appendLowerCase(StringBuilder out, long h, String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = Character.toLowerCase(s.charAt(i));
+            if (out != null) out.append(c);
+            h = UrlFingerprintSet.hash(h, c);
+        }
+        return h;
+    }
+}
@@ -0,0 +1,146 @@
+package com.inulute.mediumunlocker;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing set of 64-bit URL fingerprints with linear probing and backward-shift
+ * deletion. Lookups hash the string in place and touch no heap; at 64 bits a false positive
+ * needs on the order of billions of entries, far beyond any bookmark list.
+ */
+class UrlFingerprintSet {
+
+    private static final long EMPTY = 0L;
+    private static final int MIN_CAPACITY = 64;
+
+    private long[] slots;
+    private int size;
+
+    UrlFingerprintSet() {
+        slots = new long[MIN_CAPACITY];
+    }
+
+    // FNV-1a offset basis: the running hash of the empty string
+    static final long SEED = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** FNV-1a over the UTF-16 code units, finished with a murmur-style avalanche. */
+    static long fingerprint(String url) {
+        return finish(hash(SEED, url, 0, url.length()));
+    }
+
+    /**
+     * Continues the running hash {@code h} over {@code s[start, end)}. With {@link #SEED} and
+     * {@link #finish} this lets a fingerprint be taken of a string that is never built.
+     */
+    static long hash(long h, String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            h ^= s.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    static long hash(long h, char c) {
+        return (h ^ c) * FNV_PRIME;
+    }
+
+    static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1L : h;
+    }
+
+    UrlFingerprintSet copy() {
+        UrlFingerprintSet copy = new UrlFingerprintSet();
+        copy.slots = slots.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(String url) {
+        return contains(fingerprint(url));
+    }
+
+    boolean contains(long fp) {
+        int mask = slots.length - 1;
+        for (int i = slot(fp, mask); ; i = (i + 1) & mask) {
+            long v = slots[i];
+            if (v == EMPTY) return false;
+            if (v == fp) return true;
+        }
+    }
+
+    boolean add(String url) {
+        return add(fingerprint(url));
+    }
+
+    boolean add(long fp) {
+        if ((size + 1) * 2 > slots.length) resize(slots.length * 2);
+        int mask = slots.length - 1;
+        for (int i = slot(fp, mask); ; i = (i + 1) & mask) {
+            long v = slots[i];
+            if (v == fp) return false;
+            if (v == EMPTY) {
+                slots[i] = fp;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    boolean remove(String url) {
+        return remove(fingerprint(url));
+    }
+
+    boolean remove(long fp) {
+        int mask = slots.length - 1;
+        int i = slot(fp, mask);
+        while (true) {
+            long v = slots[i];
+            if (v == EMPTY) return false;
+            if (v == fp) break;
+            i = (i + 1) & mask;
+        }
+        // Shift later members of the probe run back so no tombstones are needed
+        int hole = i;
+        for (int j = (hole + 1) & mask; slots[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(slots[j], mask);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                slots[hole] = slots[j];
+                hole = j;
+            }
+        }
+        slots[hole] = EMPTY;
+        size--;
+        return true;
+    }
+
+    void clear() {
+        if (slots.length > MIN_CAPACITY) slots = new long[MIN_CAPACITY];
+        else Arrays.fill(slots, EMPTY);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] old = slots;
+        slots = new long[capacity];
+        int mask = capacity - 1;
+        for (long fp : old) {
+            if (fp == EMPTY) continue;
+            int i = slot(fp, mask);
+            while (slots[i] != EMPTY) i = (i + 1) & mask;
+            slots[i] = fp;
+        }
+    }
+
+    private static int slot(long fp, int mask) {
+        return (int) (fp ^ (fp >>> 32)) & mask;
+    }
+}
@@ -9,6 +9,7 @@ import android.graphics.drawable.ColorDrawable;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
@@ -18,10 +19,12 @@ import android.webkit.SslErrorHandler;
 import android.webkit.WebChromeClient;
 import android.webkit.WebResourceError;
 import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.net.http.SslError;
+import android.widget.FrameLayout;
 import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -33,18 +36,36 @@ import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.progressindicator.LinearProgressIndicator;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class WebViewActivity extends AppCompatActivity {
 
     private static final String TAG = "WebViewActivity";
     private static final String PREFS_NAME = "MediumUnlockerPrefs";
     private static final String PREF_WEBVIEW_POPUP_SHOWN_VERSION = "webview_popup_shown_version";
 
-    private static final String[] MIRROR_BASES = {
-        "https://freedium-mirror.cfd/",
-        "https://freedium.cfd/",
-        "https://archive.is/newest/",
-        "https://archive.is/oldest/"
-    };
+    private static final String[] MIRROR_BASES = SettingsActivity.MIRROR_BASES;
+    // One probe per host: the two archive.is entries would only race each other
+    private static final int[] RACE_CANDIDATES = {0, 1, 2};
+    // Images more than a screen below the fold are marked lazy. This only defers those whose
+    // request has not started yet: resetting src would fetch the rest a second time
+    private static final String LAZY_IMAGES_JS = "(function(){var h=window.innerHeight*2;"
+            + "document.querySelectorAll('img').forEach(function(i){"
+            + "if(i.complete||i.getBoundingClientRect().top<h)return;"
+            + "i.loading='lazy';});})()";
+    static final String USER_AGENT =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
 
     private HistoryManager historyManager;
     private MenuItem bookmarkMenuItem;
@@ -66,16 +87,66 @@ public class WebViewActivity extends AppCompatActivity {
     private String currentUrl;
     private String originalUrl;
     private boolean positionRestored = false;
+    private ScrollReporter scrollReporter;
+    // Tracking script for the current page; its token ties reports to this article
+    private String scrollScript;
+    // Set once the user follows a link away from the article, so its position is not overwritten
+    private boolean navigatedAway = false;
+    // The main-frame URL the article settled on, to notice coming back to it
+    private String articlePageUrl;
     private int currentMirrorIndex = 0;
-    private int startMirrorIndex = 0;
+    private int[] failoverOrder;
+    private int failoverPosition = 0;
     private boolean mainFrameError = false;
+    private MirrorRacer mirrorRacer;
+    // Results are posted, so one queued before a cancel still arrives; it is dropped by generation
+    private int raceGeneration = 0;
+    private MirrorHealth mirrorHealth;
+    // Set when a mirror load starts, cleared once its outcome is recorded
+    private long mirrorLoadStartedAt = 0;
+    private String failedMirrorUrl;
+    private ArticleArchive articleArchive;
+    // Written on the main thread, read by shouldInterceptRequest on the WebView IO thread
+    private volatile String archiveCandidate;
+    private volatile String servedFromArchive;
+    // Null when blocking is switched off; read on the WebView IO thread
+    private volatile RequestBlocker requestBlocker;
+    private final AtomicInteger blockedOnPage = new AtomicInteger();
+    // Startup instrumentation: open-to-first-paint, split by whether the pool had a WebView
+    private long createdAt;
+    private boolean usedPooledWebView;
+    // A pooled WebView may carry the NetworkWarmup preconnect page in its back stack
+    private boolean historyResetPending = false;
+    private boolean firstPaintLogged = false;
+    // Spans for LoadTimings, as elapsedRealtime stamps; firstByteAt is 0 until the main frame commits
+    private LoadTimings loadTimings;
+    private long intentOpenedAt;
+    private long activityAt;
+    private long firstByteAt;
+    private boolean timingPending = false;
+    // Reader mode: the article is extracted off-thread and shown as local HTML with JS off
+    private boolean readerActive = false;
+    private final ExecutorService readerExecutor = Executors.newSingleThreadExecutor();
+    private Future<?> readerTask;
+    private int readerGeneration = 0;
+    // Data saver: images are shrunk to this width in device pixels; 0 when switched off
+    private volatile int dataSaverWidth = 0;
+    private ImagePipeline imagePipeline;
+    private final ImagePipeline.Savings imageSavings = new ImagePipeline.Savings();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        createdAt = SystemClock.elapsedRealtime();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_webview);
 
         historyManager = HistoryManager.getInstance(this);
+        scrollReporter = new ScrollReporter(historyManager);
+        mirrorHealth = MirrorHealth.get(this);
+        articleArchive = ArticleArchive.get(this);
+        imagePipeline = ImagePipeline.get(this);
+        loadTimings = LoadTimings.get(this);
+        activityAt = createdAt;
         initializeViews();
         setupToolbar();
         setupWebView();
@@ -89,34 +160,63 @@ public class WebViewActivity extends AppCompatActivity {
         super.onNewIntent(intent);
         setIntent(intent);
         saveReadingPosition();
+        cancelRace();
         positionRestored = false;
-        currentMirrorIndex = 0;
-        startMirrorIndex = 0;
+        activityAt = SystemClock.elapsedRealtime();
         loadUrl();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        // onPause always precedes onStop, so this is the only save point needed
         saveReadingPosition();
     }
 
     @Override
     protected void onStop() {
         super.onStop();
-        saveReadingPosition();
+        historyManager.flush();
+        loadTimings.save();
     }
 
     private void saveReadingPosition() {
-        if (originalUrl == null || originalUrl.isEmpty() || webView == null) return;
+        // The reporter already holds the latest position; this only writes out what is pending
+        if (scrollReporter != null) scrollReporter.flush();
+    }
+
+    /**
+     * Connects the article page to the scroll reporter and restores its saved position once
+     * layout has settled. Called from both commit and finish, since API 21-22 lacks the former.
+     */
+    private void trackScroll(WebView view) {
+        if (mainFrameError || navigatedAway || originalUrl == null || originalUrl.isEmpty()) return;
         if (!rememberPosition()) return;
-        final String urlKey = originalUrl;
-        webView.evaluateJavascript("window.scrollY", value -> {
-            try {
-                int y = (int) Double.parseDouble(value.trim());
-                if (y > 0) historyManager.savePosition(urlKey, y);
-            } catch (Exception ignored) { }
-        });
+        if (!positionRestored) {
+            positionRestored = true;
+            int token = scrollReporter.track(originalUrl);
+            int savedY = historyManager.getPosition(originalUrl);
+            float fraction = historyManager.getPositionFraction(originalUrl);
+            if (readerActive) {
+                scrollScript = null;
+                restoreReaderPosition(savedY, fraction, 0);
+                return;
+            }
+            scrollScript = ScrollReporter.script(token, fraction, savedY);
+        }
+        if (!readerActive && scrollScript != null) view.evaluateJavascript(scrollScript, null);
+    }
+
+    /** Reader mode runs without scripts: wait for content height from the view, then jump. */
+    private void restoreReaderPosition(int savedY, float fraction, int frame) {
+        if (savedY <= 0 || !readerActive) return;
+        int height = Math.round(webView.getContentHeight() * getResources().getDisplayMetrics().density);
+        if (height <= webView.getHeight() && frame < 60) {
+            webView.postOnAnimation(() -> restoreReaderPosition(savedY, fraction, frame + 1));
+            return;
+        }
+        if (webView.getScrollY() > 0) return;
+        webView.scrollTo(0, fraction > 0 ? Math.round(fraction * height) : savedY);
     }
 
     private boolean rememberPosition() {
@@ -156,7 +256,13 @@ public class WebViewActivity extends AppCompatActivity {
     }
 
     private void initializeViews() {
-        webView = findViewById(R.id.webView);
+        usedPooledWebView = WebViewPool.hasPooled();
+        historyResetPending = usedPooledWebView;
+        webView = WebViewPool.obtain(this);
+        ((ViewGroup) findViewById(R.id.webViewContainer)).addView(webView,
+                new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        Log.i(TAG, "WebView ready " + (SystemClock.elapsedRealtime() - createdAt) + " ms after onCreate"
+                + (usedPooledWebView ? " (pooled)" : " (cold)"));
         progressBar = findViewById(R.id.progressBar);
         toolbar = findViewById(R.id.toolbar);
         errorLayout = findViewById(R.id.errorLayout);
@@ -199,15 +305,9 @@ public class WebViewActivity extends AppCompatActivity {
         if (originalUrl == null || originalUrl.isEmpty()) return;
         String title = webView.getTitle() != null ? webView.getTitle() : "";
         String freediumUrl = webView.getUrl() != null ? webView.getUrl() : currentUrl;
-        if (historyManager.isBookmarked(originalUrl)) {
-            historyManager.removeBookmark(originalUrl);
-            updateBookmarkIcon(false);
-            Toast.makeText(this, "Bookmark removed", Toast.LENGTH_SHORT).show();
-        } else {
-            historyManager.addBookmark(title, originalUrl, freediumUrl != null ? freediumUrl : "");
-            updateBookmarkIcon(true);
-            Toast.makeText(this, "Bookmarked!", Toast.LENGTH_SHORT).show();
-        }
+        boolean bookmarked = historyManager.toggleBookmark(title, originalUrl, freediumUrl);
+        updateBookmarkIcon(bookmarked);
+        Toast.makeText(this, bookmarked ? "Bookmarked!" : "Bookmark removed", Toast.LENGTH_SHORT).show();
     }
 
     private void updateBookmarkIcon(boolean bookmarked) {
@@ -217,28 +317,20 @@ public class WebViewActivity extends AppCompatActivity {
     }
 
     private void setupWebView() {
+        // Base settings were applied by WebViewPool; text zoom may have changed since
         WebSettings settings = webView.getSettings();
-        settings.setJavaScriptEnabled(true);
-        settings.setDomStorageEnabled(true);
-        settings.setDatabaseEnabled(true);
-        settings.setCacheMode(WebSettings.LOAD_DEFAULT);
-        settings.setLoadWithOverviewMode(true);
-        settings.setUseWideViewPort(true);
-        settings.setBuiltInZoomControls(true);
-        settings.setDisplayZoomControls(false);
-
-        // Use text zoom from settings
         int textZoom = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
                 .getInt(SettingsActivity.PREF_TEXT_ZOOM, 100);
         settings.setTextZoom(textZoom);
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            settings.setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
-        }
-        webView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
-        settings.setUserAgentString(
-                "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36"
-        );
+        webView.addJavascriptInterface(scrollReporter, ScrollReporter.BRIDGE_NAME);
+        // Reader mode has scripts off, so its position comes from the view
+        webView.getViewTreeObserver().addOnScrollChangedListener(() -> {
+            if (readerActive) {
+                scrollReporter.reportNative(webView.getScrollY(),
+                        webView.getContentHeight() * getResources().getDisplayMetrics().density);
+            }
+        });
 
         webView.setWebViewClient(new WebViewClient() {
             @Override
@@ -246,25 +338,82 @@ public class WebViewActivity extends AppCompatActivity {
                 super.onPageStarted(view, url, favicon);
                 positionRestored = false;
                 mainFrameError = false;
+                if (timingPending && firstByteAt == 0) firstByteAt = SystemClock.elapsedRealtime();
                 showLoading();
                 errorLayout.setVisibility(View.GONE);
                 webView.setVisibility(View.VISIBLE);
                 updateNavButtons();
             }
 
+            @Override
+            public void doUpdateVisitedHistory(WebView view, String url, boolean isReload) {
+                super.doUpdateVisitedHistory(view, url, isReload);
+                // Back on the article after following a link: track and restore it again
+                if (!navigatedAway) articlePageUrl = url;
+                else if (url != null && url.equals(articlePageUrl)) navigatedAway = false;
+            }
+
+            @Override
+            public void onPageCommitVisible(WebView view, String url) {
+                super.onPageCommitVisible(view, url);
+                if (!firstPaintLogged) {
+                    firstPaintLogged = true;
+                    Log.i(TAG, "First paint " + (SystemClock.elapsedRealtime() - createdAt) + " ms after onCreate"
+                            + (usedPooledWebView ? " (pooled WebView)" : " (cold WebView)"));
+                }
+                if (dataSaverWidth > 0 && !readerActive) view.evaluateJavascript(LAZY_IMAGES_JS, null);
+                trackScroll(view);
+            }
+
             @Override
             public void onPageFinished(WebView view, String url) {
                 super.onPageFinished(view, url);
                 hideLoading();
+                reportBlockedRequests(url);
+                if (historyResetPending && url != null && url.startsWith("http")) {
+                    historyResetPending = false;
+                    view.clearHistory();
+                }
                 if (loadingOverlay != null) loadingOverlay.setVisibility(View.GONE);
 
                 String title = view.getTitle();
+                boolean challenge = isChallengeTitle(title);
                 boolean goodTitle = title != null && !title.isEmpty()
-                        && !title.startsWith("http") && !isErrorTitle(title);
+                        && !title.startsWith("http") && !isErrorTitle(title) && !challenge;
                 if (goodTitle) {
                     toolbar.setTitle(title);
                 }
 
+                // The failed page also finishes; only the mirror load we are timing counts.
+                // An archived copy says nothing about the mirror.
+                if (servedFromArchive != null) {
+                    mirrorLoadStartedAt = 0;
+                } else if (mirrorLoadStartedAt != 0 && !challenge && !mainFrameError && url != null && !url.equals(failedMirrorUrl)) {
+                    if (goodTitle) {
+                        mirrorHealth.recordSuccess(currentMirrorIndex, SystemClock.elapsedRealtime() - mirrorLoadStartedAt);
+                        MirrorAffinity.get(WebViewActivity.this).record(originalUrl, currentMirrorIndex);
+                        if (articleArchive.isEnabled() && !articleArchive.contains(originalUrl)) {
+                            captureToArchive(view, originalUrl, url);
+                        }
+                    } else if (isErrorTitle(title)) {
+                        mirrorHealth.recordFailure(currentMirrorIndex);
+                    }
+                    mirrorLoadStartedAt = 0;
+                }
+
+                // A challenge or error page finishing is not the article loading
+                if (timingPending && !mainFrameError && firstByteAt != 0 && url != null
+                        && !url.equals(failedMirrorUrl) && !isErrorTitle(title) && !challenge) {
+                    timingPending = false;
+                    int source = readerActive ? LoadTimings.SOURCE_READER
+                            : servedFromArchive != null ? LoadTimings.SOURCE_ARCHIVE : LoadTimings.SOURCE_NETWORK;
+                    loadTimings.record(currentMirrorIndex,
+                            intentOpenedAt > 0 ? activityAt - intentOpenedAt : -1,
+                            firstByteAt - activityAt,
+                            SystemClock.elapsedRealtime() - firstByteAt,
+                            failoverPosition, source);
+                }
+
                 // Save to history only on clean loads with real titles
                 if (!mainFrameError && originalUrl != null && !originalUrl.isEmpty()) {
                     String pageTitle = goodTitle ? title : "";
@@ -274,15 +423,7 @@ public class WebViewActivity extends AppCompatActivity {
                     updateBookmarkIcon(historyManager.isBookmarked(originalUrl));
                 }
 
-                // Restore reading position (only on first load of this article)
-                if (!positionRestored && rememberPosition() && originalUrl != null && !originalUrl.isEmpty()) {
-                    positionRestored = true;
-                    int savedY = historyManager.getPosition(originalUrl);
-                    if (savedY > 0) {
-                        webView.postDelayed(() ->
-                            webView.evaluateJavascript("window.scrollTo({top:" + savedY + ",behavior:'smooth'})", null), 1200);
-                    }
-                }
+                trackScroll(view);
 
                 updateNavButtons();
             }
@@ -293,18 +434,22 @@ public class WebViewActivity extends AppCompatActivity {
                 if (request.isForMainFrame()) {
                     hideLoading();
                     view.setVisibility(View.GONE);
-                    int nextIndex = (currentMirrorIndex + 1) % MIRROR_BASES.length;
-                    if (nextIndex != startMirrorIndex && originalUrl != null) {
-                        currentMirrorIndex = nextIndex;
-                        String nextUrl = MIRROR_BASES[currentMirrorIndex] + originalUrl;
-                        currentUrl = nextUrl;
-                        Log.d(TAG, "Mirror failed, trying next: " + MIRROR_BASES[currentMirrorIndex]);
+                    // The error page committed too; the next mirror's commit is the first byte
+                    firstByteAt = 0;
+                    if (mirrorLoadStartedAt != 0) {
+                        mirrorHealth.recordFailure(currentMirrorIndex);
+                        mirrorLoadStartedAt = 0;
+                        failedMirrorUrl = request.getUrl().toString();
+                    }
+                    if (failoverOrder != null && failoverPosition + 1 < failoverOrder.length) {
+                        int nextIndex = failoverOrder[++failoverPosition];
+                        Log.d(TAG, "Mirror failed, trying next: " + MIRROR_BASES[nextIndex]);
                         if (loadingOverlay != null) {
                             loadingOverlay.setVisibility(View.VISIBLE);
                             if (loadingText != null) loadingText.setText("Trying next mirror...");
                         }
                         view.setVisibility(View.VISIBLE);
-                        view.loadUrl(nextUrl);
+                        loadMirror(nextIndex);
                         return;
                     }
                     mainFrameError = true;
@@ -312,6 +457,39 @@ public class WebViewActivity extends AppCompatActivity {
                 }
             }
 
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                if (!"GET".equalsIgnoreCase(request.getMethod())) return null;
+                if (request.isForMainFrame()) {
+                    blockedOnPage.set(0);
+                    String article = archiveCandidate;
+                    archiveCandidate = null;
+                    servedFromArchive = null;
+                    if (article == null) return null;
+                    WebResourceResponse response = articleArchive.openDocument(article);
+                    if (response == null) return null;
+                    servedFromArchive = article;
+                    articleArchive.revalidate(article);
+                    return response;
+                }
+                String url = request.getUrl().toString();
+                RequestBlocker blocker = requestBlocker;
+                if (blocker != null && blocker.shouldBlock(url)) {
+                    blockedOnPage.incrementAndGet();
+                    return new WebResourceResponse("text/plain", "UTF-8", new ByteArrayInputStream(new byte[0]));
+                }
+                String article = servedFromArchive;
+                if (article != null) {
+                    WebResourceResponse archived = articleArchive.openResource(article, url);
+                    if (archived != null) return archived;
+                }
+                // Images cached by data saver or the archive are not downloaded again after a mirror switch
+                if (ImagePipeline.isImageRequest(request)) {
+                    return imagePipeline.serve(url, dataSaverWidth, imageSavings);
+                }
+                return null;
+            }
+
             @Override
             public void onReceivedSslError(WebView view, SslErrorHandler handler, SslError error) {
                 String url = error.getUrl();
@@ -324,8 +502,18 @@ public class WebViewActivity extends AppCompatActivity {
             @Override
             public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
                 String url = request.getUrl().toString();
+                // Following a link leaves reader mode; the next page is a full mirror page
+                if (readerActive) exitReader();
+                reportImageSavings();
                 if (url.contains("freedium.cfd") || url.contains("freedium-mirror.cfd")
                         || isArchiveUrl(url) || url.contains("medium.com")) {
+                    // Redirects and script navigations (archive.is/newest, Cloudflare challenges)
+                    // are still the article loading; only a followed link leaves it
+                    boolean redirect = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && request.isRedirect();
+                    if (request.hasGesture() && !redirect) {
+                        navigatedAway = true;
+                        scrollReporter.stop();
+                    }
                     return false;
                 }
                 try { startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(url))); }
@@ -360,7 +548,8 @@ public class WebViewActivity extends AppCompatActivity {
         retryButton.setOnClickListener(v -> {
             errorLayout.setVisibility(View.GONE);
             webView.setVisibility(View.VISIBLE);
-            if (currentUrl != null) webView.loadUrl(currentUrl);
+            if (failoverOrder != null) loadMirror(currentMirrorIndex);
+            else if (currentUrl != null) webView.loadUrl(currentUrl);
         });
 
         tryProxyButton.setVisibility(View.GONE);
@@ -368,16 +557,15 @@ public class WebViewActivity extends AppCompatActivity {
         tryAlternativeButton.setText("Try Different Mirror");
         tryAlternativeButton.setVisibility(View.VISIBLE);
         tryAlternativeButton.setOnClickListener(v -> {
-            if (originalUrl != null) {
-                currentMirrorIndex = (currentMirrorIndex + 1) % MIRROR_BASES.length;
-                startMirrorIndex = currentMirrorIndex;
-                String nextUrl = MIRROR_BASES[currentMirrorIndex] + originalUrl;
-                currentUrl = nextUrl;
-                if (loadingText != null) loadingText.setText("Switching to " + getMirrorLabel(currentMirrorIndex) + "...");
+            if (failoverOrder != null) {
+                // Explicit choice: try it even if its breaker is open, then fail over from there
+                int nextIndex = failoverOrder[(failoverPosition + 1) % failoverOrder.length];
+                startFailover(nextIndex, true);
+                if (loadingText != null) loadingText.setText("Switching to " + getMirrorLabel(nextIndex) + "...");
                 if (loadingOverlay != null) loadingOverlay.setVisibility(View.VISIBLE);
                 errorLayout.setVisibility(View.GONE);
                 webView.setVisibility(View.VISIBLE);
-                webView.loadUrl(nextUrl);
+                loadMirror(nextIndex);
             }
         });
 
@@ -388,9 +576,28 @@ public class WebViewActivity extends AppCompatActivity {
         Intent intent = getIntent();
         currentUrl = intent.getStringExtra("url");
         originalUrl = intent.getStringExtra("originalUrl");
+        // Read once: a recreated activity re-delivers the intent long after it was sent
+        intentOpenedAt = intent.getLongExtra(LoadTimings.EXTRA_OPENED_AT, 0);
+        intent.removeExtra(LoadTimings.EXTRA_OPENED_AT);
+        firstByteAt = 0;
+        timingPending = true;
 
         // Determine which mirror index matches the URL we're opening
         currentMirrorIndex = 0;
+        failoverOrder = null;
+        failoverPosition = 0;
+        mirrorLoadStartedAt = 0;
+        failedMirrorUrl = null;
+        archiveCandidate = null;
+        servedFromArchive = null;
+        cancelReader();
+        reportImageSavings();
+        navigatedAway = false;
+        articlePageUrl = null;
+        dataSaverWidth = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .getBoolean(SettingsActivity.PREF_DATA_SAVER, false)
+                ? getResources().getDisplayMetrics().widthPixels : 0;
+        requestBlocker = RequestBlocker.isEnabled(this) ? RequestBlocker.get(this) : null;
         if (currentUrl != null) {
             for (int i = 0; i < MIRROR_BASES.length; i++) {
                 if (currentUrl.startsWith(MIRROR_BASES[i])) {
@@ -399,10 +606,213 @@ public class WebViewActivity extends AppCompatActivity {
                 }
             }
         }
-        startMirrorIndex = currentMirrorIndex;
 
-        if (currentUrl != null && !currentUrl.isEmpty()) webView.loadUrl(currentUrl);
-        else showError();
+        if (currentUrl == null || currentUrl.isEmpty()) {
+            showError();
+            return;
+        }
+        if (originalUrl == null || originalUrl.isEmpty()) {
+            webView.loadUrl(currentUrl);
+            return;
+        }
+        boolean race = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .getBoolean(SettingsActivity.PREF_RACE_MIRRORS, false);
+        // A mirror in cool-down is skipped rather than tried first
+        startFailover(currentMirrorIndex, false);
+        // An archived copy opens instantly (and offline); only the first load may use it
+        boolean archived = articleArchive.isEnabled() && articleArchive.contains(originalUrl);
+        boolean reader = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .getBoolean(SettingsActivity.PREF_READER_MODE, false);
+        if (reader) loadReader(archived);
+        else if (archived) {
+            archiveCandidate = originalUrl;
+            loadMirror(failoverOrder[0]);
+        } else if (race) raceMirrors();
+        else loadMirror(failoverOrder[0]);
+    }
+
+    // ==================== Reader mode ====================
+
+    private void loadReader(boolean archived) {
+        readerActive = true;
+        webView.getSettings().setJavaScriptEnabled(false);
+        if (loadingOverlay != null) {
+            loadingOverlay.setVisibility(View.VISIBLE);
+            if (loadingText != null) loadingText.setText("Preparing reader view...");
+        }
+        final String article = originalUrl;
+        final int[] order = failoverOrder;
+        final long startedAt = SystemClock.elapsedRealtime();
+        final int generation = ++readerGeneration;
+        readerTask = readerExecutor.submit(() -> {
+            ReaderExtractor.Article result = null;
+            int mirror = order[0];
+            if (archived) {
+                WebResourceResponse doc = articleArchive.openDocument(article);
+                if (doc != null) {
+                    try (InputStream in = doc.getData()) {
+                        result = ReaderExtractor.extract(in, StandardCharsets.UTF_8, MIRROR_BASES[mirror] + article);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Archived copy unreadable for reader", e);
+                    }
+                }
+            }
+            for (int i = 0; result == null && i < order.length; i++) {
+                if (Thread.currentThread().isInterrupted()) return;
+                mirror = order[i];
+                long fetchStart = SystemClock.elapsedRealtime();
+                try {
+                    ReaderExtractor.Article candidate = ReaderExtractor.fetch(MIRROR_BASES[mirror] + article);
+                    if (candidate.textLength > 0 && !isErrorTitle(candidate.title)) {
+                        mirrorHealth.recordSuccess(mirror, SystemClock.elapsedRealtime() - fetchStart);
+                        result = candidate;
+                        break;
+                    }
+                } catch (IOException e) {
+                    Log.d(TAG, "Reader fetch failed on " + MIRROR_BASES[mirror] + ": " + e.getMessage());
+                }
+                mirrorHealth.recordFailure(mirror);
+            }
+            final ReaderExtractor.Article extracted = result;
+            final int servedBy = mirror;
+            runOnUiThread(() -> {
+                if (generation == readerGeneration) showReader(extracted, servedBy, startedAt);
+            });
+        });
+    }
+
+    private void showReader(ReaderExtractor.Article article, int mirror, long startedAt) {
+        if (isFinishing() || !readerActive) return;
+        readerTask = null;
+        if (article == null) {
+            // Nothing extractable anywhere: fall back to the full page and its failover
+            Log.d(TAG, "Reader extraction failed, loading full page");
+            loadMirror(failoverOrder[0]);
+            return;
+        }
+        currentMirrorIndex = mirror;
+        currentUrl = MIRROR_BASES[mirror] + originalUrl;
+        // The extractor has the whole page by now; count text ready as first byte
+        if (timingPending) firstByteAt = SystemClock.elapsedRealtime();
+        MirrorAffinity.get(this).record(originalUrl, mirror);
+        String html = ReaderExtractor.render(article);
+        Log.i(TAG, "Reader text ready in " + (SystemClock.elapsedRealtime() - startedAt) + " ms, "
+                + html.length() + " chars, " + article.imageCount + " images");
+        webView.loadDataWithBaseURL(currentUrl, html, "text/html", "UTF-8", currentUrl);
+    }
+
+    private void exitReader() {
+        readerActive = false;
+        webView.getSettings().setJavaScriptEnabled(true);
+    }
+
+    private void cancelReader() {
+        readerGeneration++;
+        if (readerTask != null) readerTask.cancel(true);
+        readerTask = null;
+        if (readerActive) exitReader();
+    }
+
+    private void reportImageSavings() {
+        long original = imageSavings.originalBytes.get();
+        if (original == 0) return;
+        long saved = imageSavings.saved();
+        imageSavings.reset();
+        Log.i(TAG, "Data saver: " + (saved / 1024) + " KB of " + (original / 1024) + " KB saved on " + currentUrl);
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        prefs.edit().putLong(SettingsActivity.PREF_DATA_SAVED_BYTES,
+                prefs.getLong(SettingsActivity.PREF_DATA_SAVED_BYTES, 0) + saved).apply();
+    }
+
+    private void reportBlockedRequests(String url) {
+        int blocked = blockedOnPage.getAndSet(0);
+        if (blocked == 0) return;
+        Log.d(TAG, "Blocked " + blocked + " requests on " + url);
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        prefs.edit().putLong(SettingsActivity.PREF_REQUESTS_BLOCKED,
+                prefs.getLong(SettingsActivity.PREF_REQUESTS_BLOCKED, 0) + blocked).apply();
+    }
+
+    private void captureToArchive(WebView view, String article, String pageUrl) {
+        // Scripts are dropped: the saved DOM is already rendered and must not render twice
+        String js = "(function(){var d=document.documentElement.cloneNode(true);"
+                + "d.querySelectorAll('script').forEach(function(s){s.remove();});"
+                + "return '<!DOCTYPE html>'+d.outerHTML;})()";
+        view.evaluateJavascript(js, value -> {
+            if (value == null || value.equals("null")) return;
+            try {
+                String html = new JSONArray("[" + value + "]").getString(0);
+                if (!html.isEmpty()) articleArchive.capture(article, pageUrl, html);
+            } catch (JSONException e) {
+                Log.w(TAG, "Could not read page snapshot", e);
+            }
+        });
+    }
+
+    /** Orders the remaining mirrors by health, with {@code first} at the front if forced or available. */
+    private void startFailover(int first, boolean force) {
+        failoverOrder = mirrorHealth.failoverOrder(first);
+        failoverPosition = 0;
+        if (force && failoverOrder[0] != first) {
+            int at = 0;
+            while (failoverOrder[at] != first) at++;
+            System.arraycopy(failoverOrder, 0, failoverOrder, 1, at);
+            failoverOrder[0] = first;
+        }
+    }
+
+    private void loadMirror(int index) {
+        if (readerActive) exitReader();
+        currentMirrorIndex = index;
+        currentUrl = MIRROR_BASES[index] + originalUrl;
+        articlePageUrl = null;
+        mirrorLoadStartedAt = SystemClock.elapsedRealtime();
+        webView.loadUrl(currentUrl);
+    }
+
+    private void raceMirrors() {
+        cancelRace();
+        if (loadingOverlay != null) {
+            loadingOverlay.setVisibility(View.VISIBLE);
+            if (loadingText != null) loadingText.setText("Finding the fastest mirror...");
+        }
+        int count = 0;
+        int[] candidates = new int[RACE_CANDIDATES.length];
+        for (int index : RACE_CANDIDATES) {
+            if (mirrorHealth.isAvailable(index)) candidates[count++] = index;
+        }
+        if (count == 0) {
+            loadMirror(failoverOrder[0]);
+            return;
+        }
+        final int generation = ++raceGeneration;
+        mirrorRacer = new MirrorRacer(originalUrl, MIRROR_BASES, Arrays.copyOf(candidates, count), USER_AGENT,
+                mirrorHealth, new MirrorRacer.Listener() {
+                    @Override
+                    public void onWinner(int mirrorIndex, String url) {
+                        if (generation != raceGeneration || isDestroyed()) return;
+                        mirrorRacer = null;
+                        Log.d(TAG, "Mirror race won by " + MIRROR_BASES[mirrorIndex]);
+                        startFailover(mirrorIndex, true);
+                        loadMirror(mirrorIndex);
+                    }
+
+                    @Override
+                    public void onAllFailed() {
+                        if (generation != raceGeneration || isDestroyed()) return;
+                        // Fall back to loading in the WebView with failover by health
+                        mirrorRacer = null;
+                        startFailover(currentMirrorIndex, false);
+                        loadMirror(failoverOrder[0]);
+                    }
+                });
+        mirrorRacer.start();
+    }
+
+    private void cancelRace() {
+        if (mirrorRacer != null) mirrorRacer.cancel();
+        mirrorRacer = null;
+        raceGeneration++;
     }
 
     private boolean isArchiveUrl(String url) {
@@ -412,7 +822,14 @@ public class WebViewActivity extends AppCompatActivity {
                 || url.contains("archive.md");
     }
 
-    private boolean isErrorTitle(String title) {
+    /** Cloudflare's interstitial, which redirects to the article once the check passes. */
+    static boolean isChallengeTitle(String title) {
+        if (title == null) return false;
+        String lower = title.toLowerCase();
+        return lower.startsWith("just a moment") || lower.startsWith("attention required");
+    }
+
+    static boolean isErrorTitle(String title) {
         if (title == null || title.isEmpty()) return true;
         String lower = title.toLowerCase();
         return lower.contains("not available") || lower.contains("not found")
@@ -421,12 +838,7 @@ public class WebViewActivity extends AppCompatActivity {
     }
 
     private String getMirrorLabel(int index) {
-        switch (index) {
-            case 1: return "Archive.is (Alt)";
-            case 2: return "Freedium";
-            case 3: return "Freedium Mirror";
-            default: return "Archive.is";
-        }
+        return SettingsActivity.MIRROR_LABELS[index];
     }
 
     private void showLoading() {
@@ -468,6 +880,11 @@ public class WebViewActivity extends AppCompatActivity {
 
     @Override
     protected void onDestroy() {
+        cancelRace();
+        cancelReader();
+        readerExecutor.shutdownNow();
+        reportImageSavings();
+        if (scrollReporter != null) scrollReporter.stop();
         if (webView != null) webView.destroy();
         super.onDestroy();
     }
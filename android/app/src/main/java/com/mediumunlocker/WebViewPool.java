@@ -0,0 +1,111 @@
+package com.inulute.mediumunlocker;
+
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+
+/**
+ * Holds one pre-built WebView so the Chromium start-up cost is paid while the home screen is
+ * idle rather than when an article is opened. The pooled instance wraps the application
+ * context in a {@link MutableContextWrapper} and is re-based onto the adopting activity.
+ *
+ * WebViews can only be created on the main thread, so both the first instance and each
+ * replacement are built from an idle handler.
+ */
+final class WebViewPool {
+
+    private static final String TAG = "WebViewPool";
+    // Let the article that consumed the last instance get going before building the next one
+    private static final long REFILL_DELAY_MS = 3000;
+
+    private static WebView pooled;
+    private static boolean scheduled;
+
+    private WebViewPool() { }
+
+    /** Builds a pooled WebView the next time the main thread is idle. Main thread only. */
+    static void prewarm(Context context) {
+        if (pooled != null || scheduled) return;
+        scheduled = true;
+        Context app = context.getApplicationContext();
+        Looper.myQueue().addIdleHandler(() -> {
+            scheduled = false;
+            if (pooled == null) {
+                long start = SystemClock.elapsedRealtime();
+                try {
+                    WebView webView = new WebView(new MutableContextWrapper(app));
+                    configure(webView, app);
+                    pooled = webView;
+                    Log.i(TAG, "Pre-warmed WebView in " + (SystemClock.elapsedRealtime() - start) + " ms");
+                } catch (RuntimeException e) {
+                    // WebView provider missing or updating; activities fall back to creating their own
+                    Log.w(TAG, "Could not pre-warm WebView", e);
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Returns the pooled WebView re-based onto {@code context}, or a new one if the pool is
+     * empty, and schedules a replacement. Main thread only.
+     */
+    static WebView obtain(Context context) {
+        WebView webView = pooled;
+        pooled = null;
+        if (webView != null) {
+            ((MutableContextWrapper) webView.getContext()).setBaseContext(context);
+        } else {
+            webView = new WebView(context);
+            configure(webView, context);
+        }
+        Context app = context.getApplicationContext();
+        new Handler(Looper.getMainLooper()).postDelayed(() -> prewarm(app), REFILL_DELAY_MS);
+        return webView;
+    }
+
+    /**
+     * Has Chromium resolve and open sockets to {@code origins} from the pooled WebView, if
+     * there is one. The page is based on the first origin so the sockets land in the same
+     * network partition as the article load. Main thread only.
+     */
+    static void preconnect(String... origins) {
+        if (pooled == null || origins.length == 0) return;
+        StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head>");
+        for (String origin : origins) {
+            html.append("<link rel=\"dns-prefetch\" href=\"").append(origin).append("\">")
+                    .append("<link rel=\"preconnect\" href=\"").append(origin).append("\">");
+        }
+        html.append("</head></html>");
+        pooled.loadDataWithBaseURL(origins[0], html.toString(), "text/html", "UTF-8", null);
+    }
+
+    static boolean hasPooled() {
+        return pooled != null;
+    }
+
+    /** Settings that do not depend on the article; clients are set by the activity. */
+    static void configure(WebView webView, Context context) {
+        WebSettings settings = webView.getSettings();
+        settings.setJavaScriptEnabled(true);
+        settings.setDomStorageEnabled(true);
+        settings.setDatabaseEnabled(true);
+        settings.setCacheMode(WebSettings.LOAD_DEFAULT);
+        settings.setLoadWithOverviewMode(true);
+        settings.setUseWideViewPort(true);
+        settings.setBuiltInZoomControls(true);
+        settings.setDisplayZoomControls(false);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            settings.setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
+        }
+        settings.setUserAgentString(WebViewActivity.USER_AGENT);
+        webView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+    }
+}
@@ -0,0 +1,53 @@
+package com.inulute.mediumunlocker;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class ReaderExtractorTest {
+
+    private static ReaderExtractor.Article extract(String html) throws IOException {
+        return ReaderExtractor.extract(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8, "https://freedium-mirror.cfd/https://medium.com/p/1a2b3c4d5e6f");
+    }
+
+    @Test
+    public void unclosedListItemsInSkippedChromeDoNotHideTheBody() throws IOException {
+        ReaderExtractor.Article article = extract("<html><body>"
+                + "<nav><ul><li>Home<li>Topics</ul></nav>"
+                + "<p>First paragraph of the story.</p><p>Second paragraph.</p>"
+                + "</body></html>");
+        assertTrue(article.bodyHtml, article.bodyHtml.contains("First paragraph of the story."));
+        assertTrue(article.bodyHtml, article.bodyHtml.contains("Second paragraph."));
+        assertFalse(article.bodyHtml, article.bodyHtml.contains("Topics"));
+    }
+
+    @Test
+    public void unclosedParagraphsInSkippedHeaderDoNotHideTheBody() throws IOException {
+        ReaderExtractor.Article article = extract("<html><body>"
+                + "<header><p>Sign in<p>Get the app</header>"
+                + "<h2>Heading</h2><p>Body text survives.</p>"
+                + "<footer><p>Terms<li>Privacy</footer>"
+                + "<p>After the footer.</p>"
+                + "</body></html>");
+        assertTrue(article.bodyHtml, article.bodyHtml.contains("Body text survives."));
+        assertTrue(article.bodyHtml, article.bodyHtml.contains("After the footer."));
+        assertFalse(article.bodyHtml, article.bodyHtml.contains("Get the app"));
+        assertFalse(article.bodyHtml, article.bodyHtml.contains("Privacy"));
+    }
+
+    @Test
+    public void strayEndTagInsideSkippedRegionIsIgnored() throws IOException {
+        ReaderExtractor.Article article = extract("<html><body>"
+                + "<nav><div>Menu</span></div></nav>"
+                + "<p>Still here.</p>"
+                + "</body></html>");
+        assertTrue(article.bodyHtml, article.bodyHtml.contains("Still here."));
+        assertFalse(article.bodyHtml, article.bodyHtml.contains("Menu"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.inulute.mediumunlocker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class RequestBlockerTest {
+
+    private final RequestBlocker blocker = new RequestBlocker(Arrays.asList(
+            "doubleclick.net",
+            "google-analytics.com",
+            "fonts.gstatic.com",
+            "/pixel.gif",
+            "/collect?",
+            ".woff2"));
+
+    @Test
+    public void hostRuleCoversTheHostAndItsSubdomains() {
+        assertTrue(blocker.shouldBlock("https://doubleclick.net/ad.js"));
+        assertTrue(blocker.shouldBlock("https://stats.g.doubleclick.net/r/collect"));
+        assertTrue(blocker.shouldBlock("https://www.google-analytics.com/analytics.js"));
+        assertTrue(blocker.shouldBlock("https://DoubleClick.NET/ad.js"));
+    }
+
+    @Test
+    public void hostRuleStopsAtLabelBoundaries() {
+        assertFalse(blocker.shouldBlock("https://notdoubleclick.net/ad.js"));
+        assertFalse(blocker.shouldBlock("https://doubleclick.net.example.com/ad.js"));
+        assertFalse(blocker.shouldBlock("https://gstatic.com/logo.png"));
+        assertFalse(blocker.shouldBlock("https://myfonts.gstatic.com.evil/x"));
+    }
+
+    @Test
+    public void portAndUserinfoAreIgnored() {
+        assertTrue(blocker.shouldBlock("https://doubleclick.net:8443/ad.js"));
+        assertTrue(blocker.shouldBlock("https://user:pw@ads.doubleclick.net/ad.js"));
+        assertTrue(blocker.shouldBlock("https://user@doubleclick.net:443"));
+        assertFalse(blocker.shouldBlock("https://doubleclick.net@medium.com/post"));
+    }
+
+    @Test
+    public void pathRulesMatchAnywhereInPathAndQuery() {
+        assertTrue(blocker.shouldBlock("https://medium.com/_/stat/pixel.gif?x=1"));
+        assertTrue(blocker.shouldBlock("https://example.com/g/collect?v=2"));
+        assertTrue(blocker.shouldBlock("https://cdn.example.com/fonts/Inter.WOFF2"));
+        assertFalse(blocker.shouldBlock("https://example.com/collection"));
+        assertFalse(blocker.shouldBlock("https://example.com/page#/pixel.gif"));
+    }
+
+    @Test
+    public void pathRulesDoNotMatchTheHost() {
+        assertFalse(blocker.shouldBlock("https://pixel.gif.example.com/"));
+        assertFalse(blocker.shouldBlock("https://x.woff2.example.com/a.css"));
+    }
+
+    @Test
+    public void ordinaryRequestsPass() {
+        assertFalse(blocker.shouldBlock("https://freedium-mirror.cfd/https://medium.com/p/1a2b3c4d5e6f"));
+        assertFalse(blocker.shouldBlock("https://miro.medium.com/v2/resize:fit:700/1*abc.png"));
+        assertFalse(blocker.shouldBlock("not a url"));
+        assertEquals(6, blocker.ruleCount());
+    }
+}
@@ -0,0 +1,94 @@
+package com.inulute.mediumunlocker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class UrlCanonicalizerTest {
+
+    private static final String[] SAMPLES = {
+            "https://medium.com/@alice/why-caching-matters-1a2b3c4d5e6f",
+            "https://medium.com/@alice/why-caching-matters-1a2b3c4d5e6f?source=rss----abc&sk=f00d",
+            "http://m.medium.com/@alice/why-caching-matters-1a2b3c4d5e6f/",
+            "https://medium.com/p/1a2b3c4d5e6f",
+            "https://blog.example.com/why-caching-matters-1a2b3c4d5e6f#comments",
+            "  https://Example.com/About/?utm_source=x&page=2  ",
+            "HTTP://WWW.Medium.com/@bob/tags",
+            "http://notmedium.com/x",
+            "not a url",
+            "",
+    };
+
+    @Test
+    public void keyIsThePostIdForEverySpellingOfAnArticle() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(SAMPLES[i], "medium:1a2b3c4d5e6f", UrlCanonicalizer.key(SAMPLES[i]));
+        }
+    }
+
+    @Test
+    public void keyFallsBackToTheCleanedUrl() {
+        assertEquals("https://example.com/About?page=2", UrlCanonicalizer.key(SAMPLES[5]));
+        assertEquals("https://medium.com/@bob/tags", UrlCanonicalizer.key(SAMPLES[6]));
+        assertEquals("", UrlCanonicalizer.key(null));
+    }
+
+    @Test
+    public void keyFingerprintMatchesTheFingerprintOfTheKey() {
+        for (String url : SAMPLES) {
+            assertEquals(url, UrlFingerprintSet.fingerprint(UrlCanonicalizer.key(url)),
+                    UrlCanonicalizer.keyFingerprint(url));
+        }
+        assertEquals(UrlFingerprintSet.fingerprint(""), UrlCanonicalizer.keyFingerprint(null));
+    }
+
+    @Test
+    public void cleanNormalizesSchemeAndHost() {
+        assertEquals("https://medium.com/@bob/tags", UrlCanonicalizer.clean("HTTP://WWW.Medium.com/@bob/tags"));
+        assertEquals("https://medium.com/x", UrlCanonicalizer.clean("http://m.medium.com/x"));
+        assertEquals("https://blog.medium.com/x", UrlCanonicalizer.clean("http://blog.medium.com/x"));
+        assertEquals("http://notmedium.com/x", UrlCanonicalizer.clean("http://notmedium.com/x"));
+        assertEquals("http://example.com", UrlCanonicalizer.clean("http://Example.COM/"));
+    }
+
+    @Test
+    public void cleanDropsTrackingParametersFragmentAndTrailingSlash() {
+        assertEquals("https://example.com/a?b=1&c=2",
+                UrlCanonicalizer.clean("https://example.com/a/?b=1&utm_medium=y&fbclid=z&c=2#frag"));
+        assertEquals("https://medium.com/@a/post-1a2b3c4d5e6f",
+                UrlCanonicalizer.clean("https://medium.com/@a/post-1a2b3c4d5e6f?source=friends_link&gi=9"));
+        // Only exact names count; a longer name that starts like one is kept
+        assertEquals("https://example.com/a?sources=1", UrlCanonicalizer.clean("https://example.com/a?sources=1"));
+    }
+
+    @Test
+    public void cleanKeepsTheFriendLinkToken() {
+        assertEquals("https://medium.com/@a/post-1a2b3c4d5e6f?sk=abc123",
+                UrlCanonicalizer.clean("https://medium.com/@a/post-1a2b3c4d5e6f?sk=abc123&source=friends_link"));
+    }
+
+    @Test
+    public void cleanTrimsNonUrls() {
+        assertEquals("hello world", UrlCanonicalizer.clean("  hello world \n"));
+        assertEquals("", UrlCanonicalizer.clean(null));
+    }
+
+    @Test
+    public void postIdReadsSlugsAndShortLinks() {
+        assertEquals("1a2b3c4d5e6f", UrlCanonicalizer.postId("https://medium.com/@a/some-title-1a2b3c4d5e6f"));
+        assertEquals("1a2b3c4d5e", UrlCanonicalizer.postId("https://medium.com/p/1a2b3c4d5e/"));
+        assertEquals("1a2b3c4d5e", UrlCanonicalizer.postId("https://medium.com/@a/title-1a2b3c4d5e?x=y-1a2b3c4d5f"));
+        assertEquals("1a2b3c4d5e", UrlCanonicalizer.postId("medium.com/@a/title-1a2b3c4d5e"));
+    }
+
+    @Test
+    public void postIdRejectsSuffixesThatAreNotIds() {
+        assertNull(UrlCanonicalizer.postId("https://medium.com/@a/archive-2023010112"));
+        assertNull(UrlCanonicalizer.postId("https://medium.com/@a/title-1a2b3c"));
+        assertNull(UrlCanonicalizer.postId("https://medium.com/@a/title-1A2B3C4D5E6F"));
+        assertNull(UrlCanonicalizer.postId("https://medium.com/@a/title-1a2b3c4d5e6f0a"));
+        assertNull(UrlCanonicalizer.postId("https://medium.com/"));
+        assertNull(UrlCanonicalizer.postId("https://some-host-1a2b3c4d5e6f.com"));
+    }
+}